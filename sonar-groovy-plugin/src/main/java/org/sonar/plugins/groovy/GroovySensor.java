@@ -18,27 +18,17 @@
  */
 package org.sonar.plugins.groovy;
 
-import groovyjarjarantlr.Token;
-import groovyjarjarantlr.TokenStream;
-import groovyjarjarantlr.TokenStreamException;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
-import org.apache.commons.io.IOUtils;
+import javax.annotation.Nullable;
 import org.codehaus.groovy.antlr.GroovySourceToken;
-import org.codehaus.groovy.antlr.parser.GroovyLexer;
 import org.codehaus.groovy.antlr.parser.GroovyTokenTypes;
-import org.gmetrics.result.MetricResult;
-import org.gmetrics.result.NumberMetricResult;
-import org.gmetrics.resultsnode.ClassResultsNode;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codenarc.source.SourceCode;
 import org.sonar.api.PropertyType;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputComponent;
@@ -53,20 +43,20 @@ import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.FileLinesContext;
 import org.sonar.api.measures.FileLinesContextFactory;
 import org.sonar.api.resources.Qualifiers;
-import org.sonar.api.utils.log.Logger;
-import org.sonar.api.utils.log.Loggers;
 import org.sonar.plugins.groovy.foundation.Groovy;
+import org.sonar.plugins.groovy.foundation.GroovyAstProvider;
+import org.sonar.plugins.groovy.foundation.GroovyAstProvider.Consumer;
 import org.sonar.plugins.groovy.foundation.GroovyFileSystem;
 import org.sonar.plugins.groovy.foundation.GroovyHighlighterAndTokenizer;
-import org.sonar.plugins.groovy.gmetrics.GMetricsSourceAnalyzer;
+import org.sonar.plugins.groovy.foundation.GroovyLexedFile;
+import org.sonar.plugins.groovy.foundation.GroovyTypeIndex;
+import org.sonar.plugins.groovy.metrics.GroovyMetrics;
+import org.sonar.plugins.groovy.utils.ParallelExecution;
 
 public class GroovySensor implements Sensor {
 
   static final String IGNORE_HEADER_COMMENTS = "sonar.groovy.ignoreHeaderComments";
-
-  private static final Logger LOG = Loggers.get(GroovySensor.class);
-
-  private static final String CYCLOMATIC_COMPLEXITY_METRIC_NAME = "CyclomaticComplexity";
+  static final String ANALYSIS_THREADS = "sonar.groovy.analysis.threads";
 
   private static final Set<String> EMPTY_COMMENT_LINES =
       Arrays.stream(new String[] {"/**", "/*", "*", "*/", "//"}).collect(Collectors.toSet());
@@ -74,19 +64,21 @@ public class GroovySensor implements Sensor {
   private final Configuration settings;
   private final FileLinesContextFactory fileLinesContextFactory;
   private final GroovyFileSystem groovyFileSystem;
-
-  private int loc = 0;
-  private int comments = 0;
-  private int currentLine = 0;
-  private FileLinesContext fileLinesContext;
+  private final GroovyAstProvider astProvider;
+  private final GroovyTypeIndex typeIndex;
 
   public GroovySensor(
       Configuration settings,
       FileLinesContextFactory fileLinesContextFactory,
-      FileSystem fileSystem) {
+      FileSystem fileSystem,
+      GroovyAstProvider astProvider,
+      GroovyTypeIndex typeIndex) {
     this.settings = settings;
     this.fileLinesContextFactory = fileLinesContextFactory;
     this.groovyFileSystem = new GroovyFileSystem(fileSystem);
+    this.astProvider = astProvider;
+    this.typeIndex = typeIndex;
+    astProvider.expect(Consumer.METRICS);
   }
 
   @Override
@@ -96,154 +88,181 @@ public class GroovySensor implements Sensor {
 
   @Override
   public void execute(SensorContext context) {
-    if (groovyFileSystem.hasGroovyFiles()) {
-      List<InputFile> inputFiles = groovyFileSystem.sourceInputFiles();
-      computeBaseMetrics(context, inputFiles);
-      computeGroovyMetrics(context, inputFiles);
-      highlightFiles(context, groovyFileSystem.groovyInputFiles());
+    try {
+      if (groovyFileSystem.hasGroovyFiles()) {
+        boolean ignoreHeaderComments = settings.getBoolean(IGNORE_HEADER_COMMENTS).orElse(true);
+        ParallelExecution.forEachOrdered(
+            groovyFileSystem.groovyInputFiles(),
+            settings.getInt(ANALYSIS_THREADS).orElse(1),
+            inputFile -> processTokens(inputFile, ignoreHeaderComments, astProvider, typeIndex),
+            result -> result.save(context, fileLinesContextFactory));
+      }
+    } finally {
+      astProvider.finish(Consumer.METRICS);
     }
   }
 
-  private static void computeGroovyMetrics(SensorContext context, List<InputFile> inputFiles) {
-    GMetricsSourceAnalyzer metricsAnalyzer =
-        new GMetricsSourceAnalyzer(context.fileSystem(), inputFiles);
-
-    metricsAnalyzer.analyze();
-
-    for (Entry<InputFile, List<ClassResultsNode>> entry :
-        metricsAnalyzer.resultsByFile().entrySet()) {
-      processFile(context, entry.getKey(), entry.getValue());
+  /**
+   * Lexes the file once and feeds the resulting tokens to the metrics computation (main files
+   * only), to the highlighter and to the type index. Runs on a worker thread: nothing is saved
+   * here.
+   */
+  private static TokenResult processTokens(
+      InputFile inputFile,
+      boolean ignoreHeaderComments,
+      GroovyAstProvider astProvider,
+      GroovyTypeIndex typeIndex) {
+    GroovyLexedFile lexedFile = GroovyLexedFile.lex(inputFile);
+    typeIndex.add(inputFile, lexedFile);
+    BaseMetrics baseMetrics = null;
+    GroovyMetrics groovyMetrics = null;
+    if (inputFile.type() == InputFile.Type.MAIN) {
+      baseMetrics = new BaseMetrics(ignoreHeaderComments).compute(lexedFile);
+      groovyMetrics = computeGroovyMetrics(astProvider.take(lexedFile, Consumer.METRICS));
     }
+    GroovyHighlighterAndTokenizer highlighter =
+        new GroovyHighlighterAndTokenizer(inputFile).tokenize(lexedFile);
+    return new TokenResult(inputFile, baseMetrics, groovyMetrics, highlighter);
   }
 
-  private static void processFile(
-      SensorContext context, InputFile sonarFile, Collection<ClassResultsNode> results) {
-    int classes = 0;
-    int methods = 0;
-    int complexity = 0;
-
-    for (ClassResultsNode result : results) {
-      classes += 1;
-
-      methods += result.getChildren().size();
-
-      Optional<MetricResult> cyclomaticComplexity =
-          getCyclomaticComplexity(result.getMetricResults());
-      if (cyclomaticComplexity.isPresent()) {
-        int value =
-            (Integer) ((NumberMetricResult) cyclomaticComplexity.get()).getValues().get("total");
-        complexity += value;
-      }
+  /** Computes class, function and complexity counts from the AST of the file. */
+  @Nullable
+  private static GroovyMetrics computeGroovyMetrics(@Nullable SourceCode sourceCode) {
+    ModuleNode ast = sourceCode != null ? sourceCode.getAst() : null;
+    if (ast == null || ast.getClasses().isEmpty()) {
+      return null;
     }
-
-    saveMetric(context, sonarFile, CoreMetrics.CLASSES, classes);
-    saveMetric(context, sonarFile, CoreMetrics.FUNCTIONS, methods);
-    saveMetric(context, sonarFile, CoreMetrics.COMPLEXITY, complexity);
+    return GroovyMetrics.compute(ast);
   }
 
-  private static Optional<MetricResult> getCyclomaticComplexity(List<MetricResult> metricResults) {
-    return metricResults.stream()
-        .filter(
-            metricResult ->
-                CYCLOMATIC_COMPLEXITY_METRIC_NAME.equals(metricResult.getMetric().getName()))
-        .findAny();
+  private static <T extends Serializable> void saveMetric(
+      SensorContext context, InputComponent inputComponent, Metric<T> metric, T value) {
+    context.<T>newMeasure().withValue(value).forMetric(metric).on(inputComponent).save();
   }
 
-  private void computeBaseMetrics(SensorContext context, List<InputFile> inputFiles) {
-    for (InputFile groovyFile : inputFiles) {
-      computeBaseMetrics(context, groovyFile);
+  private static class TokenResult {
+    private final InputFile inputFile;
+    @Nullable private final BaseMetrics baseMetrics;
+    @Nullable private final GroovyMetrics groovyMetrics;
+    private final GroovyHighlighterAndTokenizer highlighter;
+
+    TokenResult(
+        InputFile inputFile,
+        @Nullable BaseMetrics baseMetrics,
+        @Nullable GroovyMetrics groovyMetrics,
+        GroovyHighlighterAndTokenizer highlighter) {
+      this.inputFile = inputFile;
+      this.baseMetrics = baseMetrics;
+      this.groovyMetrics = groovyMetrics;
+      this.highlighter = highlighter;
     }
-  }
 
-  private void computeBaseMetrics(SensorContext context, InputFile groovyFile) {
-    loc = 0;
-    comments = 0;
-    currentLine = 0;
-    fileLinesContext = fileLinesContextFactory.createFor(groovyFile);
-    try (InputStreamReader streamReader =
-        new InputStreamReader(groovyFile.inputStream(), groovyFile.charset())) {
-      List<String> lines = IOUtils.readLines(groovyFile.inputStream(), groovyFile.charset());
-      GroovyLexer groovyLexer = new GroovyLexer(streamReader);
-      groovyLexer.setWhitespaceIncluded(true);
-      TokenStream tokenStream = groovyLexer.plumb();
-      Token token = tokenStream.nextToken();
-      Token nextToken = tokenStream.nextToken();
-      while (nextToken.getType() != Token.EOF_TYPE) {
-        handleToken(token, nextToken.getLine(), lines);
-        token = nextToken;
-        nextToken = tokenStream.nextToken();
+    void save(SensorContext context, FileLinesContextFactory fileLinesContextFactory) {
+      if (baseMetrics != null) {
+        baseMetrics.save(context, fileLinesContextFactory.createFor(inputFile), inputFile);
+      }
+      if (groovyMetrics != null) {
+        saveMetric(context, inputFile, CoreMetrics.CLASSES, groovyMetrics.classes());
+        saveMetric(context, inputFile, CoreMetrics.FUNCTIONS, groovyMetrics.functions());
+        saveMetric(context, inputFile, CoreMetrics.COMPLEXITY, groovyMetrics.complexity());
+        saveMetric(
+            context,
+            inputFile,
+            CoreMetrics.COGNITIVE_COMPLEXITY,
+            groovyMetrics.cognitiveComplexity());
       }
-      handleToken(token, nextToken.getLine(), lines);
-      saveMetric(context, groovyFile, CoreMetrics.NCLOC, loc);
-      saveMetric(context, groovyFile, CoreMetrics.COMMENT_LINES, comments);
-    } catch (TokenStreamException e) {
-      LOG.error("Unexpected token when lexing file: {}", groovyFile, e);
-    } catch (IOException e) {
-      LOG.error("Unable to read file: {}", groovyFile, e);
+      highlighter.save(context);
     }
-    fileLinesContext.save();
   }
 
-  private static void highlightFiles(SensorContext context, List<InputFile> inputFiles) {
-    for (InputFile inputFile : inputFiles) {
-      new GroovyHighlighterAndTokenizer(inputFile).processFile(context);
+  /** NCLOC and comment lines of a single file. */
+  private static class BaseMetrics {
+    private final boolean ignoreHeaderComments;
+    private final List<Integer> nclocLines = new ArrayList<>();
+    private int loc = 0;
+    private int comments = 0;
+    private int currentLine = 0;
+    private boolean complete;
+
+    BaseMetrics(boolean ignoreHeaderComments) {
+      this.ignoreHeaderComments = ignoreHeaderComments;
     }
-  }
 
-  private static <T extends Serializable> void saveMetric(
-      SensorContext context, InputComponent inputComponent, Metric<T> metric, T value) {
-    context.<T>newMeasure().withValue(value).forMetric(metric).on(inputComponent).save();
-  }
+    BaseMetrics compute(GroovyLexedFile lexedFile) {
+      complete = lexedFile.isComplete();
+      if (complete) {
+        List<GroovySourceToken> tokens = lexedFile.tokens();
+        List<String> lines = lexedFile.lines();
+        for (int i = 0; i < tokens.size(); i++) {
+          int nextTokenLine =
+              i + 1 < tokens.size() ? tokens.get(i + 1).getLine() : lexedFile.endLine();
+          handleToken(tokens.get(i), nextTokenLine, lines);
+        }
+      }
+      return this;
+    }
 
-  private void handleToken(Token token, int nextTokenLine, List<String> lines) {
-    int tokenType = token.getType();
-    int tokenLine = token.getLine();
-    if (isComment(tokenType)) {
-      if (isNotHeaderComment(tokenLine)) {
-        comments += nextTokenLine - tokenLine + 1 - numberEmptyLines(token, lines);
+    void save(SensorContext context, FileLinesContext fileLinesContext, InputFile groovyFile) {
+      for (Integer line : nclocLines) {
+        fileLinesContext.setIntValue(CoreMetrics.NCLOC_DATA_KEY, line, 1);
+      }
+      if (complete) {
+        saveMetric(context, groovyFile, CoreMetrics.NCLOC, loc);
+        saveMetric(context, groovyFile, CoreMetrics.COMMENT_LINES, comments);
       }
-    } else if (isNotWhitespace(tokenType) && tokenLine != currentLine) {
-      loc++;
-      fileLinesContext.setIntValue(CoreMetrics.NCLOC_DATA_KEY, tokenLine, 1);
-      currentLine = tokenLine;
+      fileLinesContext.save();
     }
-  }
 
-  private int numberEmptyLines(Token token, List<String> lines) {
-    List<String> relatedLines = getLinesFromToken(lines, (GroovySourceToken) token);
-    long emptyLines =
-        relatedLines.stream().map(String::trim).filter(EMPTY_COMMENT_LINES::contains).count();
-    return (int) emptyLines;
-  }
+    private void handleToken(GroovySourceToken token, int nextTokenLine, List<String> lines) {
+      int tokenType = token.getType();
+      int tokenLine = token.getLine();
+      if (isComment(tokenType)) {
+        if (isNotHeaderComment(tokenLine)) {
+          comments += nextTokenLine - tokenLine + 1 - numberEmptyLines(token, lines);
+        }
+      } else if (isNotWhitespace(tokenType) && tokenLine != currentLine) {
+        loc++;
+        nclocLines.add(tokenLine);
+        currentLine = tokenLine;
+      }
+    }
 
-  private static List<String> getLinesFromToken(List<String> lines, GroovySourceToken gst) {
-    List<String> newLines = new ArrayList<>(lines.subList(gst.getLine() - 1, gst.getLineLast()));
+    private static int numberEmptyLines(GroovySourceToken token, List<String> lines) {
+      List<String> relatedLines = getLinesFromToken(lines, token);
+      long emptyLines =
+          relatedLines.stream().map(String::trim).filter(EMPTY_COMMENT_LINES::contains).count();
+      return (int) emptyLines;
+    }
 
-    int lastLineIndex = newLines.size() - 1;
-    String lastLine = newLines.get(lastLineIndex).substring(0, gst.getColumnLast() - 1);
-    newLines.set(lastLineIndex, lastLine);
+    private static List<String> getLinesFromToken(List<String> lines, GroovySourceToken gst) {
+      List<String> newLines = new ArrayList<>(lines.subList(gst.getLine() - 1, gst.getLineLast()));
 
-    String firstLine = newLines.get(0).substring(gst.getColumn() - 1);
-    newLines.set(0, firstLine);
+      int lastLineIndex = newLines.size() - 1;
+      String lastLine = newLines.get(lastLineIndex).substring(0, gst.getColumnLast() - 1);
+      newLines.set(lastLineIndex, lastLine);
 
-    return newLines;
-  }
+      String firstLine = newLines.get(0).substring(gst.getColumn() - 1);
+      newLines.set(0, firstLine);
 
-  private boolean isNotHeaderComment(int tokenLine) {
-    return !(tokenLine == 1 && settings.getBoolean(IGNORE_HEADER_COMMENTS).orElse(true));
-  }
+      return newLines;
+    }
 
-  private static boolean isNotWhitespace(int tokenType) {
-    return !(tokenType == GroovyTokenTypes.WS
-        || tokenType == GroovyTokenTypes.STRING_NL
-        || tokenType == GroovyTokenTypes.ONE_NL
-        || tokenType == GroovyTokenTypes.NLS);
-  }
+    private boolean isNotHeaderComment(int tokenLine) {
+      return !(tokenLine == 1 && ignoreHeaderComments);
+    }
+
+    private static boolean isNotWhitespace(int tokenType) {
+      return !(tokenType == GroovyTokenTypes.WS
+          || tokenType == GroovyTokenTypes.STRING_NL
+          || tokenType == GroovyTokenTypes.ONE_NL
+          || tokenType == GroovyTokenTypes.NLS);
+    }
 
-  private static boolean isComment(int tokenType) {
-    return tokenType == GroovyTokenTypes.SL_COMMENT
-        || tokenType == GroovyTokenTypes.SH_COMMENT
-        || tokenType == GroovyTokenTypes.ML_COMMENT;
+    private static boolean isComment(int tokenType) {
+      return tokenType == GroovyTokenTypes.SL_COMMENT
+          || tokenType == GroovyTokenTypes.SH_COMMENT
+          || tokenType == GroovyTokenTypes.ML_COMMENT;
+    }
   }
 
   @Override
@@ -266,6 +285,17 @@ public class GroovySensor implements Sensor {
             .onQualifiers(Qualifiers.PROJECT)
             .defaultValue("true")
             .type(PropertyType.BOOLEAN)
+            .build(),
+        PropertyDefinition.builder(ANALYSIS_THREADS)
+            .name("Analysis Threads")
+            .description(
+                "Number of threads used to lex, parse, measure and highlight Groovy files. "
+                    + "Results are still saved by a single thread.")
+            .category(Groovy.NAME)
+            .subCategory("Base")
+            .onQualifiers(Qualifiers.PROJECT)
+            .defaultValue("1")
+            .type(PropertyType.INTEGER)
             .build());
   }
 }
@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -25,13 +24,13 @@ import static org.sonar.api.utils.ParsingUtils.parseNumber;
 import java.io.File;
 import java.text.ParseException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import javax.xml.stream.XMLStreamException;
 import org.apache.commons.lang.StringUtils;
 import org.codehaus.staxmate.in.SMInputCursor;
-import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.coverage.NewCoverage;
@@ -39,6 +38,7 @@ import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.plugins.groovy.foundation.Groovy;
+import org.sonar.plugins.groovy.foundation.GroovyFileSystem;
 import org.sonar.plugins.groovy.utils.StaxParser;
 
 public class CoberturaReportParser {
@@ -46,11 +46,11 @@ public class CoberturaReportParser {
   private static final Logger LOG = Loggers.get(CoberturaReportParser.class);
 
   private final SensorContext context;
-  private final FileSystem fileSystem;
+  private final GroovyFileSystem groovyFileSystem;
 
-  public CoberturaReportParser(SensorContext context, final FileSystem fileSystem) {
+  public CoberturaReportParser(SensorContext context, GroovyFileSystem groovyFileSystem) {
     this.context = context;
-    this.fileSystem = fileSystem;
+    this.groovyFileSystem = groovyFileSystem;
   }
 
   /** Parse a Cobertura xml report and create measures accordingly */
@@ -93,16 +93,12 @@ public class CoberturaReportParser {
 
   @CheckForNull
   private InputFile getInputFile(String filename) {
-    try {
-      InputFile file =
-          fileSystem.inputFile(fileSystem.predicates().matchesPathPattern("**/" + filename));
-      if (file != null) {
-        return file;
-      }
-    } catch (IllegalArgumentException e) {
+    List<InputFile> files = groovyFileSystem.inputFilesEndingWith(filename);
+    if (files.size() > 1) {
       LOG.warn("Multiple matches for coverage of '{}' found", filename);
+      return null;
     }
-    return null;
+    return files.isEmpty() ? null : files.get(0);
   }
 
   private void collectFileMeasures(SMInputCursor clazz, Map<String, ParsingResult> resultByFilename)
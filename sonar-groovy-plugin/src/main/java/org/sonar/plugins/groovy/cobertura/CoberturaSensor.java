@@ -76,7 +76,7 @@ public class CoberturaSensor implements Sensor {
       }
       if (xmlFile.exists()) {
         LOG.info("Analyzing Cobertura report: " + reportPath);
-        new CoberturaReportParser(context, fileSystem).parseReport(xmlFile);
+        new CoberturaReportParser(context, groovyFileSystem).parseReport(xmlFile);
       } else {
         LOG.info("Cobertura xml report not found: " + reportPath);
       }
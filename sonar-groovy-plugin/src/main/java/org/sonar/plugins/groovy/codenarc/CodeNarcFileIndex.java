@@ -0,0 +1,72 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.codenarc;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.InputFile.Type;
+import org.sonar.api.utils.PathUtils;
+
+/**
+ * Main files of the module by path relative to the base directory, built once to resolve the files
+ * of CodeNarc reports without querying the file system for each of them. Paths are resolved like
+ * {@link org.sonar.api.batch.fs.FilePredicates#hasAbsolutePath(String)} does.
+ */
+class CodeNarcFileIndex {
+
+  private final Path baseDir;
+  private final Map<String, InputFile> filesByRelativePath = new HashMap<>();
+
+  CodeNarcFileIndex(FileSystem fileSystem) {
+    this.baseDir = fileSystem.baseDir().toPath().toAbsolutePath().normalize();
+    for (InputFile inputFile : fileSystem.inputFiles(fileSystem.predicates().hasType(Type.MAIN))) {
+      filesByRelativePath.put(inputFile.relativePath(), inputFile);
+    }
+  }
+
+  /** Main file at the given absolute path, or path relative to the base directory. */
+  @CheckForNull
+  InputFile inputFile(String path) {
+    InputFile inputFile = filesByRelativePath.get(path);
+    if (inputFile == null) {
+      String relativePath = relativePath(path);
+      inputFile = relativePath != null ? filesByRelativePath.get(relativePath) : null;
+    }
+    return inputFile;
+  }
+
+  @CheckForNull
+  private String relativePath(String path) {
+    try {
+      Path file = Paths.get(path);
+      file = (file.isAbsolute() ? file : baseDir.resolve(file)).normalize();
+      return file.startsWith(baseDir)
+          ? PathUtils.sanitize(baseDir.relativize(file).toString())
+          : null;
+    } catch (InvalidPathException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.codenarc;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.sonar.plugins.groovy.codenarc.CodeNarcXMLParser.CodeNarcViolation;
+
+/**
+ * Detects violations which were already read from a previous report, when several reports overlap.
+ * Violations are compared on rule, file, line and message; violations repeated within a single
+ * report are left alone.
+ */
+class CodeNarcReportDeduplicator {
+
+  private final Set<ViolationKey> previousReports = new HashSet<>();
+  private final Set<ViolationKey> currentReport = new HashSet<>();
+  private int duplicates;
+
+  /** Whether the violation was already read from a previous report. */
+  boolean isDuplicate(CodeNarcViolation violation) {
+    ViolationKey key = new ViolationKey(violation);
+    if (previousReports.contains(key)) {
+      duplicates++;
+      return true;
+    }
+    currentReport.add(key);
+    return false;
+  }
+
+  /** Marks the end of a report: its violations are duplicates when read again from later ones. */
+  void endReport() {
+    previousReports.addAll(currentReport);
+    currentReport.clear();
+  }
+
+  /** Number of violations found to be duplicates so far. */
+  int duplicates() {
+    return duplicates;
+  }
+
+  private static final class ViolationKey {
+    @Nullable private final String ruleName;
+    @Nullable private final String file;
+    @Nullable private final Integer line;
+    @Nullable private final String message;
+
+    ViolationKey(CodeNarcViolation violation) {
+      this.ruleName = violation.getRuleName();
+      this.file =
+          violation.getInputFile() != null
+              ? violation.getInputFile().key()
+              : violation.getFilename();
+      this.line = violation.getLine();
+      this.message = violation.getMessage();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ViolationKey)) {
+        return false;
+      }
+      ViolationKey other = (ViolationKey) o;
+      return Objects.equals(ruleName, other.ruleName)
+          && Objects.equals(file, other.file)
+          && Objects.equals(line, other.line)
+          && Objects.equals(message, other.message);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(ruleName, file, line, message);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.codenarc;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.CheckForNull;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.batch.rule.ActiveRules;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Keys of the active CodeNarc rules by CodeNarc rule name, looked up once per sensor execution
+ * rather than once per violation. Violations of rules which are not active are counted per rule and
+ * logged once at the end.
+ */
+class CodeNarcRuleKeys {
+
+  private static final Logger LOG = Loggers.get(CodeNarcRuleKeys.class);
+
+  private final Map<String, RuleKey> ruleKeysByName = new HashMap<>();
+  private final Map<String, Integer> ignoredViolationsByRule = new TreeMap<>();
+
+  CodeNarcRuleKeys(ActiveRules activeRules) {
+    for (ActiveRule activeRule :
+        activeRules.findByRepository(CodeNarcRulesDefinition.REPOSITORY_KEY)) {
+      if (activeRule.internalKey() != null) {
+        ruleKeysByName.putIfAbsent(activeRule.internalKey(), activeRule.ruleKey());
+      }
+    }
+  }
+
+  /**
+   * Returns the key of the active rule with the given CodeNarc name, or null if there is none, in
+   * which case the violation is counted as ignored.
+   */
+  @CheckForNull
+  RuleKey ruleKey(String ruleName) {
+    RuleKey ruleKey = ruleKeysByName.get(ruleName);
+    if (ruleKey == null) {
+      ignoredViolationsByRule.merge(ruleName, 1, Integer::sum);
+    }
+    return ruleKey;
+  }
+
+  /** Number of ignored violations by CodeNarc rule name. */
+  Map<String, Integer> ignoredViolations() {
+    return Collections.unmodifiableMap(ignoredViolationsByRule);
+  }
+
+  void logIgnoredViolations() {
+    ignoredViolationsByRule.forEach(
+        (ruleName, count) ->
+            LOG.warn(
+                "No such rule in SonarQube, so {} violation(s) from CodeNarc will be ignored: {}",
+                count,
+                ruleName));
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.codenarc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.codenarc.rule.Rule;
+import org.codenarc.rule.Violation;
+import org.codenarc.ruleset.ListRuleSet;
+import org.codenarc.ruleset.RuleSet;
+import org.codenarc.source.SourceCode;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.api.utils.text.JsonWriter;
+
+/**
+ * Records, for each CodeNarc rule, the CPU time spent applying it, how many files it was applied
+ * to, how many of those files got violations and how many violations it produced. Rules are wrapped
+ * by {@link #profile(RuleSet, Predicate)}; statistics are thread-safe so that files can be analyzed
+ * in parallel.
+ *
+ * <p>CodeNarc parses and compiles a file lazily, in the first rule asking for its AST. The AST is
+ * therefore built before each rule needing it is timed, and that time is reported on its own.
+ */
+class CodeNarcRuleProfiler {
+
+  static final String REPORT_FILE_NAME = "rule-profiling.json";
+
+  private static final Logger LOG = Loggers.get(CodeNarcRuleProfiler.class);
+  private static final int LOGGED_RULES = 10;
+
+  private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+  private final boolean cpuTimeSupported = threadMXBean.isCurrentThreadCpuTimeSupported();
+  private final Map<String, RuleStatistics> statisticsByRule = new ConcurrentHashMap<>();
+  private final LongAdder astCompilationNanos = new LongAdder();
+
+  /**
+   * Wraps the rules of the rule set. The AST of the source, compiled up to the phase of the rule,
+   * is built before timing the rules accepted by {@code needsAst}.
+   */
+  RuleSet profile(RuleSet ruleSet, Predicate<Rule> needsAst) {
+    List<Rule> rules = new ArrayList<>();
+    for (Object rule : ruleSet.getRules()) {
+      rules.add(new ProfiledRule((Rule) rule, needsAst.test((Rule) rule)));
+    }
+    return new ListRuleSet(rules);
+  }
+
+  /** Builds the AST of the source, if not done yet, and records the time it took. */
+  void compile(SourceCode sourceCode) {
+    long start = now();
+    try {
+      sourceCode.getAst();
+    } finally {
+      astCompilationNanos.add(now() - start);
+    }
+  }
+
+  /** Time spent parsing and compiling sources, which is not charged to any rule. */
+  long astCompilationNanos() {
+    return astCompilationNanos.sum();
+  }
+
+  /** Statistics of all rules, the most expensive first. */
+  List<RuleStatistics> statistics() {
+    return statisticsByRule.values().stream()
+        .sorted(
+            Comparator.comparingLong(RuleStatistics::cpuTimeNanos)
+                .reversed()
+                .thenComparing(RuleStatistics::ruleName))
+        .collect(Collectors.toList());
+  }
+
+  /** Writes the JSON report into {@code workdir} and logs the most expensive rules. */
+  void report(File workdir) {
+    List<RuleStatistics> statistics = statistics();
+    File reportFile = new File(workdir, REPORT_FILE_NAME);
+    try (Writer writer = Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8)) {
+      writeJson(statistics, astCompilationNanos(), writer);
+    } catch (IOException e) {
+      throw new IllegalStateException("Can not write CodeNarc rule profiling report", e);
+    }
+
+    LOG.info(
+        "CodeNarc rule profiling ({} CPU time), full report in {}",
+        cpuTimeSupported ? "thread" : "wall clock",
+        reportFile);
+    LOG.info(
+        "  AST parsing and compilation: {} ms",
+        TimeUnit.NANOSECONDS.toMillis(astCompilationNanos()));
+    statistics.stream()
+        .limit(LOGGED_RULES)
+        .forEach(
+            s ->
+                LOG.info(
+                    "  {}: {} ms on {} files, {} violations in {} files",
+                    s.ruleName(),
+                    TimeUnit.NANOSECONDS.toMillis(s.cpuTimeNanos()),
+                    s.invocations(),
+                    s.violations(),
+                    s.filesWithViolations()));
+  }
+
+  private static void writeJson(
+      List<RuleStatistics> statistics, long astCompilationNanos, Writer writer) {
+    JsonWriter json = JsonWriter.of(writer);
+    json.beginObject()
+        .name("astCompilation")
+        .beginObject()
+        .prop("cpuTimeMs", TimeUnit.NANOSECONDS.toMillis(astCompilationNanos))
+        .endObject();
+    json.name("rules").beginArray();
+    for (RuleStatistics s : statistics) {
+      json.beginObject()
+          .prop("rule", s.ruleName())
+          .prop("cpuTimeMs", TimeUnit.NANOSECONDS.toMillis(s.cpuTimeNanos()))
+          .prop("invocations", s.invocations())
+          .prop("filesWithViolations", s.filesWithViolations())
+          .prop("violations", s.violations())
+          .endObject();
+    }
+    json.endArray().endObject().close();
+  }
+
+  private long now() {
+    return cpuTimeSupported ? threadMXBean.getCurrentThreadCpuTime() : System.nanoTime();
+  }
+
+  static class RuleStatistics {
+    private final String ruleName;
+    private final LongAdder cpuTimeNanos = new LongAdder();
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder filesWithViolations = new LongAdder();
+    private final LongAdder violations = new LongAdder();
+
+    RuleStatistics(String ruleName) {
+      this.ruleName = ruleName;
+    }
+
+    void record(long elapsedNanos, int violationCount) {
+      cpuTimeNanos.add(elapsedNanos);
+      invocations.increment();
+      if (violationCount > 0) {
+        filesWithViolations.increment();
+        violations.add(violationCount);
+      }
+    }
+
+    String ruleName() {
+      return ruleName;
+    }
+
+    long cpuTimeNanos() {
+      return cpuTimeNanos.sum();
+    }
+
+    long invocations() {
+      return invocations.sum();
+    }
+
+    long filesWithViolations() {
+      return filesWithViolations.sum();
+    }
+
+    long violations() {
+      return violations.sum();
+    }
+  }
+
+  /** Delegates to a rule and records its statistics. */
+  private class ProfiledRule implements Rule {
+    private final Rule rule;
+    private final boolean needsAst;
+    private final RuleStatistics statistics;
+
+    ProfiledRule(Rule rule, boolean needsAst) {
+      this.rule = rule;
+      this.needsAst = needsAst;
+      this.statistics = statisticsByRule.computeIfAbsent(rule.getName(), RuleStatistics::new);
+    }
+
+    @Override
+    public List<Violation> applyTo(SourceCode sourceCode) throws Throwable {
+      if (needsAst) {
+        // the source may be a decorator compiling up to another phase, which caches its AST too
+        compile(sourceCode);
+      }
+      long start = now();
+      List<Violation> violations = null;
+      try {
+        violations = rule.applyTo(sourceCode);
+        return violations;
+      } finally {
+        statistics.record(now() - start, violations == null ? 0 : violations.size());
+      }
+    }
+
+    @Override
+    public int getPriority() {
+      return rule.getPriority();
+    }
+
+    @Override
+    public String getName() {
+      return rule.getName();
+    }
+
+    @Override
+    public int getCompilerPhase() {
+      return rule.getCompilerPhase();
+    }
+  }
+}
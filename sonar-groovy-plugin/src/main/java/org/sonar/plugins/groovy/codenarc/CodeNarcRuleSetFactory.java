@@ -0,0 +1,144 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.codenarc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.lang.StringUtils;
+import org.codenarc.rule.Rule;
+import org.codenarc.ruleset.ListRuleSet;
+import org.codenarc.ruleset.RuleSet;
+import org.codenarc.util.PropertyUtil;
+import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.batch.rule.ActiveRules;
+
+/**
+ * Builds the CodeNarc rule set of the active rules directly, the way CodeNarc's XML rule set reader
+ * would from the exported profile, but without writing and parsing any XML. The rule classes and
+ * their parameters are cached by {@link #signature(ActiveRules) signature}, so modules sharing a
+ * quality profile only resolve them once, but each rule set gets its own rule instances.
+ */
+@ScannerSide
+public class CodeNarcRuleSetFactory {
+
+  // SONARGROOV-40 : key of rule having null parameters have been suffixed with ".fixed"
+  private static final String FIXED_SUFFIX = ".fixed";
+
+  private final Map<String, List<RuleDefinition>> definitionsBySignature =
+      new ConcurrentHashMap<>();
+
+  /** A fresh rule set holding new rules configured by the active CodeNarc rules. */
+  public RuleSet ruleSet(ActiveRules activeRules) {
+    Collection<ActiveRule> codeNarcRules =
+        activeRules.findByRepository(CodeNarcRulesDefinition.REPOSITORY_KEY);
+    List<RuleDefinition> definitions =
+        definitionsBySignature.computeIfAbsent(
+            signature(activeRules), key -> definitions(codeNarcRules));
+    List<Rule> rules = new ArrayList<>(definitions.size());
+    for (RuleDefinition definition : definitions) {
+      rules.add(definition.newRule());
+    }
+    return new ListRuleSet(rules);
+  }
+
+  /**
+   * Identifies the CodeNarc configuration of a quality profile: the active rules, in order, with
+   * their parameters.
+   */
+  public static String signature(ActiveRules activeRules) {
+    StringBuilder signature = new StringBuilder();
+    for (ActiveRule activeRule :
+        activeRules.findByRepository(CodeNarcRulesDefinition.REPOSITORY_KEY)) {
+      signature
+          .append(activeRule.ruleKey())
+          .append(new TreeMap<>(activeRule.params()))
+          .append('\n');
+    }
+    return signature.toString();
+  }
+
+  /** Class name of the CodeNarc rule implementing an active rule. */
+  static String ruleClassName(ActiveRule activeRule) {
+    String ruleKey = activeRule.ruleKey().rule();
+    if (ruleKey.endsWith(FIXED_SUFFIX)) {
+      ruleKey = ruleKey.substring(0, ruleKey.length() - FIXED_SUFFIX.length());
+    }
+    return ruleKey;
+  }
+
+  private static List<RuleDefinition> definitions(Collection<ActiveRule> activeRules) {
+    List<RuleDefinition> definitions = new ArrayList<>(activeRules.size());
+    for (ActiveRule activeRule : activeRules) {
+      definitions.add(definition(activeRule));
+    }
+    return Collections.unmodifiableList(definitions);
+  }
+
+  private static RuleDefinition definition(ActiveRule activeRule) {
+    String className = ruleClassName(activeRule);
+    Class<?> ruleClass;
+    try {
+      ruleClass = CodeNarcRuleSetFactory.class.getClassLoader().loadClass(className);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("Can not instantiate CodeNarc rule " + className, e);
+    }
+    if (!Rule.class.isAssignableFrom(ruleClass)) {
+      throw new IllegalStateException(className + " is not a CodeNarc rule");
+    }
+    Map<String, String> params = new LinkedHashMap<>();
+    for (Map.Entry<String, String> param : activeRule.params().entrySet()) {
+      if (StringUtils.isNotBlank(param.getValue())) {
+        params.put(param.getKey(), param.getValue());
+      }
+    }
+    return new RuleDefinition(ruleClass.asSubclass(Rule.class), params);
+  }
+
+  /** A CodeNarc rule class and the properties to set on each of its instances. */
+  private static class RuleDefinition {
+    private final Class<? extends Rule> ruleClass;
+    private final Map<String, String> params;
+
+    RuleDefinition(Class<? extends Rule> ruleClass, Map<String, String> params) {
+      this.ruleClass = ruleClass;
+      this.params = params;
+    }
+
+    Rule newRule() {
+      Rule rule;
+      try {
+        rule = ruleClass.getDeclaredConstructor().newInstance();
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException(
+            "Can not instantiate CodeNarc rule " + ruleClass.getName(), e);
+      }
+      for (Map.Entry<String, String> param : params.entrySet()) {
+        PropertyUtil.setPropertyFromString(rule, param.getKey(), param.getValue());
+      }
+      return rule;
+    }
+  }
+}
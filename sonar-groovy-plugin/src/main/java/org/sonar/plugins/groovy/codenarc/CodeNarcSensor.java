@@ -20,27 +20,29 @@ package org.sonar.plugins.groovy.codenarc;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
-import javax.annotation.CheckForNull;
+import java.util.function.Consumer;
 import javax.annotation.Nullable;
 import org.apache.commons.io.FileUtils;
 import org.codenarc.CodeNarcRunner;
+import org.codenarc.plugin.AbstractCodeNarcPlugin;
+import org.codenarc.rule.Rule;
 import org.codenarc.rule.Violation;
+import org.codenarc.ruleset.RuleSet;
+import org.sonar.api.PropertyType;
 import org.sonar.api.batch.fs.InputFile;
-import org.sonar.api.batch.rule.ActiveRule;
 import org.sonar.api.batch.rule.ActiveRules;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
 import org.sonar.api.batch.sensor.issue.NewIssue;
 import org.sonar.api.batch.sensor.issue.NewIssueLocation;
+import org.sonar.api.config.Configuration;
 import org.sonar.api.config.PropertyDefinition;
 import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.rule.RuleKey;
@@ -48,21 +50,51 @@ import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.plugins.groovy.codenarc.CodeNarcXMLParser.CodeNarcViolation;
 import org.sonar.plugins.groovy.foundation.Groovy;
+import org.sonar.plugins.groovy.foundation.GroovyAstProvider;
 import org.sonar.plugins.groovy.foundation.GroovyFileSystem;
+import org.sonar.plugins.groovy.utils.ParallelExecution;
 
 public class CodeNarcSensor implements Sensor {
 
   @Deprecated static final String CODENARC_REPORT_PATH = "sonar.groovy.codenarc.reportPath";
   static final String CODENARC_REPORT_PATHS = "sonar.groovy.codenarc.reportPaths";
+  static final String CODENARC_THREADS = "sonar.groovy.codenarc.threads";
+  static final String CODENARC_PROFILING = "sonar.groovy.codenarc.profiling";
+  static final String CODENARC_CACHE = "sonar.groovy.codenarc.cache";
+  static final String CODENARC_CACHE_DIR = "sonar.groovy.codenarc.cacheDir";
+
+  /** A JSON CodeNarc rule set without any rule. */
+  private static final String EMPTY_RULE_SET = "{}";
 
   private static final Logger LOG = Loggers.get(CodeNarcSensor.class);
 
   private final ActiveRules activeRules;
   private final GroovyFileSystem groovyFileSystem;
+  private final GroovyAstProvider astProvider;
+  private final CodeNarcRuleSetFactory ruleSetFactory;
 
-  public CodeNarcSensor(ActiveRules activeRules, GroovyFileSystem groovyFileSystem) {
+  public CodeNarcSensor(
+      ActiveRules activeRules,
+      Configuration settings,
+      GroovyFileSystem groovyFileSystem,
+      GroovyAstProvider astProvider,
+      CodeNarcRuleSetFactory ruleSetFactory) {
     this.activeRules = activeRules;
     this.groovyFileSystem = groovyFileSystem;
+    this.astProvider = astProvider;
+    this.ruleSetFactory = ruleSetFactory;
+    if (runsCodeNarc(settings, activeRules)) {
+      astProvider.expect(GroovyAstProvider.Consumer.CODENARC);
+    }
+  }
+
+  /**
+   * Whether this sensor will run CodeNarc on the sources, rather than import existing reports or be
+   * skipped for lack of active rules.
+   */
+  private static boolean runsCodeNarc(Configuration settings, ActiveRules activeRules) {
+    return !settings.hasKey(CODENARC_REPORT_PATHS)
+        && !activeRules.findByRepository(CodeNarcRulesDefinition.REPOSITORY_KEY).isEmpty();
   }
 
   @Override
@@ -75,6 +107,14 @@ public class CodeNarcSensor implements Sensor {
 
   @Override
   public void execute(SensorContext context) {
+    try {
+      importOrRunCodeNarc(context);
+    } finally {
+      astProvider.finish(GroovyAstProvider.Consumer.CODENARC);
+    }
+  }
+
+  private void importOrRunCodeNarc(SensorContext context) {
     // Should we reuse existing report from CodeNarc ?
     if (context.config().hasKey(CODENARC_REPORT_PATHS)) {
       // Yes
@@ -103,24 +143,58 @@ public class CodeNarcSensor implements Sensor {
     }
   }
 
+  /**
+   * Parses the reports on {@link #CODENARC_THREADS} threads, while issues are created on the
+   * calling thread in the order of the reports. A single report, or a single thread, is streamed
+   * into issues without being held in memory.
+   */
   private void parseReport(SensorContext context, List<File> reports) {
-    for (File report : reports) {
-      Collection<CodeNarcViolation> violations =
-          CodeNarcXMLParser.parse(report, context.fileSystem());
-      for (CodeNarcViolation violation : violations) {
-        ActiveRule activeRule =
-            context
-                .activeRules()
-                .findByInternalKey(CodeNarcRulesDefinition.REPOSITORY_KEY, violation.getRuleName());
-        if (activeRule != null) {
-          InputFile inputFile = inputFileFor(context, violation.getFilename());
-          insertIssue(context, violation, activeRule.ruleKey(), inputFile);
-        } else {
-          LOG.warn(
-              "No such rule in SonarQube, so violation from CodeNarc will be ignored: {}",
-              violation.getRuleName());
-        }
+    CodeNarcRuleKeys ruleKeys = new CodeNarcRuleKeys(context.activeRules());
+    CodeNarcFileIndex fileIndex = new CodeNarcFileIndex(context.fileSystem());
+    CodeNarcReportDeduplicator deduplicator =
+        reports.size() > 1 ? new CodeNarcReportDeduplicator() : null;
+    Consumer<CodeNarcViolation> issues =
+        violation -> {
+          if (deduplicator == null || !deduplicator.isDuplicate(violation)) {
+            RuleKey ruleKey = ruleKeys.ruleKey(violation.getRuleName());
+            if (ruleKey != null) {
+              insertIssue(context, violation, ruleKey, violation.getInputFile());
+            }
+          }
+        };
+
+    int threads = context.config().getInt(CODENARC_THREADS).orElse(1);
+    if (threads <= 1 || reports.size() == 1) {
+      for (File report : reports) {
+        CodeNarcXMLParser.parse(report, fileIndex, issues);
+        endReport(deduplicator);
       }
+    } else {
+      ParallelExecution.forEachOrdered(
+          reports,
+          threads,
+          report -> {
+            List<CodeNarcViolation> violations = new ArrayList<>();
+            CodeNarcXMLParser.parse(report, fileIndex, violations::add);
+            return violations;
+          },
+          violations -> {
+            violations.forEach(issues);
+            endReport(deduplicator);
+          });
+    }
+
+    ruleKeys.logIgnoredViolations();
+    if (deduplicator != null && deduplicator.duplicates() > 0) {
+      LOG.info(
+          "{} CodeNarc violation(s) already read from another report were ignored",
+          deduplicator.duplicates());
+    }
+  }
+
+  private static void endReport(@Nullable CodeNarcReportDeduplicator deduplicator) {
+    if (deduplicator != null) {
+      deduplicator.endReport();
     }
   }
 
@@ -156,60 +230,72 @@ public class CodeNarcSensor implements Sensor {
 
     File workdir = new File(context.fileSystem().workDir(), "codenarc");
     prepareWorkDir(workdir);
-    File codeNarcConfiguration = new File(workdir, "profile.xml");
-    exportCodeNarcConfiguration(codeNarcConfiguration);
 
     CodeNarcRunner runner = new CodeNarcRunner();
-    runner.setRuleSetFiles("file:" + codeNarcConfiguration.getAbsolutePath());
+    // CodeNarcRunner requires a rule set to read, the active rules are added by the plugin
+    runner.setRuleSetString(EMPTY_RULE_SET);
+    runner.registerPlugin(new ActiveRulesPlugin(ruleSetFactory.ruleSet(activeRules)));
 
+    CodeNarcRuleProfiler profiler =
+        context.config().getBoolean(CODENARC_PROFILING).orElse(false)
+            ? new CodeNarcRuleProfiler()
+            : null;
+    CodeNarcViolationCache violationCache = violationCache(context);
     CodeNarcSourceAnalyzer analyzer =
-        new CodeNarcSourceAnalyzer(groovyFileSystem.sourceInputFiles());
+        new CodeNarcSourceAnalyzer(
+            groovyFileSystem.sourceInputFiles(),
+            astProvider,
+            context.config().getInt(CODENARC_THREADS).orElse(1),
+            profiler,
+            violationCache);
     runner.setSourceAnalyzer(analyzer);
     runner.execute();
+    if (violationCache != null) {
+      violationCache.save();
+    }
+    if (profiler != null) {
+      profiler.report(workdir);
+    }
     reportViolations(context, analyzer.getViolationsByFile());
   }
 
+  /**
+   * The cache, when enabled. It needs a directory of its own: the scanner cleans its working
+   * directory before each analysis.
+   */
+  @Nullable
+  private CodeNarcViolationCache violationCache(SensorContext context) {
+    if (!context.config().getBoolean(CODENARC_CACHE).orElse(false)) {
+      return null;
+    }
+    Optional<String> cacheDir = context.config().get(CODENARC_CACHE_DIR);
+    if (!cacheDir.isPresent()) {
+      LOG.warn("{} is ignored as long as {} is not set", CODENARC_CACHE, CODENARC_CACHE_DIR);
+      return null;
+    }
+    return CodeNarcViolationCache.load(
+        context.fileSystem().resolvePath(cacheDir.get()).toPath(),
+        context.fileSystem().baseDir().getAbsolutePath(),
+        CodeNarcRuleSetFactory.signature(activeRules));
+  }
+
   private void reportViolations(
       SensorContext context, Map<InputFile, List<Violation>> violationsByFile) {
+    CodeNarcRuleKeys ruleKeys = new CodeNarcRuleKeys(context.activeRules());
     for (Entry<InputFile, List<Violation>> violationsOnFile : violationsByFile.entrySet()) {
       InputFile groovyFile = violationsOnFile.getKey();
       if (groovyFile == null) {
         continue;
       }
       for (Violation violation : violationsOnFile.getValue()) {
-        String ruleKey = violation.getRule().getName();
-        ActiveRule activeRule =
-            context
-                .activeRules()
-                .findByInternalKey(CodeNarcRulesDefinition.REPOSITORY_KEY, ruleKey);
-        if (activeRule != null) {
+        RuleKey ruleKey = ruleKeys.ruleKey(violation.getRule().getName());
+        if (ruleKey != null) {
           insertIssue(
-              context,
-              activeRule.ruleKey(),
-              violation.getLineNumber(),
-              violation.getMessage(),
-              groovyFile);
-        } else {
-          LOG.warn(
-              "No such rule in SonarQube, so violation from CodeNarc will be ignored: {}", ruleKey);
+              context, ruleKey, violation.getLineNumber(), violation.getMessage(), groovyFile);
         }
       }
     }
-  }
-
-  @CheckForNull
-  private InputFile inputFileFor(SensorContext context, String path) {
-    return context.fileSystem().inputFile(context.fileSystem().predicates().hasAbsolutePath(path));
-  }
-
-  private void exportCodeNarcConfiguration(File file) {
-    try {
-      StringWriter writer = new StringWriter();
-      new CodeNarcProfileExporter(writer).exportProfile(activeRules);
-      FileUtils.writeStringToFile(file, writer.toString());
-    } catch (IOException e) {
-      throw new IllegalStateException("Can not generate CodeNarc configuration file", e);
-    }
+    ruleKeys.logIgnoredViolations();
   }
 
   private static void prepareWorkDir(File dir) {
@@ -222,9 +308,26 @@ public class CodeNarcSensor implements Sensor {
     }
   }
 
+  /** Adds the rules built from the active rules to the (empty) rule set read by CodeNarcRunner. */
+  private static class ActiveRulesPlugin extends AbstractCodeNarcPlugin {
+    private final RuleSet ruleSet;
+
+    ActiveRulesPlugin(RuleSet ruleSet) {
+      this.ruleSet = ruleSet;
+    }
+
+    @Override
+    public void processRules(List<Rule> rules) {
+      for (Object rule : ruleSet.getRules()) {
+        rules.add((Rule) rule);
+      }
+    }
+  }
+
   public static List<Object> getExtensions() {
     return Arrays.asList(
         CodeNarcRulesDefinition.class,
+        CodeNarcRuleSetFactory.class,
         CodeNarcSensor.class,
         PropertyDefinition.builder(CODENARC_REPORT_PATHS)
             .name("CodeNarc Reports")
@@ -235,6 +338,54 @@ public class CodeNarcSensor implements Sensor {
             .onQualifiers(Qualifiers.PROJECT)
             .multiValues(true)
             .deprecatedKey(CODENARC_REPORT_PATH)
+            .build(),
+        PropertyDefinition.builder(CODENARC_THREADS)
+            .name("CodeNarc Threads")
+            .description(
+                "Number of threads used to run CodeNarc on the Groovy files, or to parse the "
+                    + "reports given by "
+                    + CODENARC_REPORT_PATHS
+                    + ". Issues are the same, and reported in the same order, whatever the value.")
+            .category(Groovy.NAME)
+            .subCategory("CodeNarc")
+            .onQualifiers(Qualifiers.PROJECT)
+            .defaultValue("1")
+            .type(PropertyType.INTEGER)
+            .build(),
+        PropertyDefinition.builder(CODENARC_PROFILING)
+            .name("CodeNarc Rule Profiling")
+            .description(
+                "If set to \"true\", the time spent in each CodeNarc rule and the number of violations it raised "
+                    + "are logged for the most expensive rules and written to "
+                    + CodeNarcRuleProfiler.REPORT_FILE_NAME
+                    + " in the CodeNarc working directory.")
+            .category(Groovy.NAME)
+            .subCategory("CodeNarc")
+            .onQualifiers(Qualifiers.PROJECT)
+            .defaultValue("false")
+            .type(PropertyType.BOOLEAN)
+            .build(),
+        PropertyDefinition.builder(CODENARC_CACHE)
+            .name("CodeNarc Cache")
+            .description(
+                "If set to \"true\", CodeNarc violations are cached between analyses in the CodeNarc cache "
+                    + "directory, and files whose content did not change are not analyzed again by CodeNarc. "
+                    + "The cache is reset whenever the quality profile, CodeNarc or this plugin change.")
+            .category(Groovy.NAME)
+            .subCategory("CodeNarc")
+            .onQualifiers(Qualifiers.PROJECT)
+            .defaultValue("false")
+            .type(PropertyType.BOOLEAN)
+            .build(),
+        PropertyDefinition.builder(CODENARC_CACHE_DIR)
+            .name("CodeNarc Cache Directory")
+            .description(
+                "Directory of the CodeNarc cache, required to enable it. May be absolute or relative to the "
+                    + "project base directory. It must survive between analyses, so it cannot be in the scanner "
+                    + "working directory, and it can be shared by the modules of a project.")
+            .category(Groovy.NAME)
+            .subCategory("CodeNarc")
+            .onQualifiers(Qualifiers.PROJECT)
             .build());
   }
 }
@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -19,54 +18,168 @@
  */
 package org.sonar.plugins.groovy.codenarc;
 
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import javax.annotation.Nullable;
 import org.codenarc.analyzer.AbstractSourceAnalyzer;
 import org.codenarc.results.DirectoryResults;
 import org.codenarc.results.FileResults;
 import org.codenarc.results.Results;
+import org.codenarc.rule.AbstractAstVisitorRule;
+import org.codenarc.rule.Rule;
 import org.codenarc.rule.Violation;
+import org.codenarc.ruleset.ListRuleSet;
 import org.codenarc.ruleset.RuleSet;
-import org.codenarc.source.SourceString;
+import org.codenarc.source.SourceCode;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
+import org.sonar.plugins.groovy.foundation.GroovyAstProvider;
+import org.sonar.plugins.groovy.foundation.GroovyAstProvider.Consumer;
+import org.sonar.plugins.groovy.utils.ParallelExecution;
 
 public class CodeNarcSourceAnalyzer extends AbstractSourceAnalyzer {
   private static final Logger LOG = Loggers.get(CodeNarcSourceAnalyzer.class);
 
-  private final Map<InputFile, List<Violation>> violationsByFile = new HashMap<>();
+  /** Violations can only be suppressed by this annotation, which CodeNarc finds in the AST. */
+  private static final String SUPPRESS_WARNINGS = "SuppressWarnings";
+
+  private final Map<InputFile, List<Violation>> violationsByFile = new LinkedHashMap<>();
   private final List<InputFile> sourceFiles;
+  private final GroovyAstProvider astProvider;
+  private final int threads;
+  @Nullable private final CodeNarcRuleProfiler profiler;
+  @Nullable private final CodeNarcViolationCache violationCache;
+  private final Map<String, Rule> rulesByName = new HashMap<>();
+  private final List<Rule> lineRules = new ArrayList<>();
+  private final List<Rule> astRules = new ArrayList<>();
+  private RuleSet astRuleSet;
 
-  public CodeNarcSourceAnalyzer(List<InputFile> sourceFiles) {
+  public CodeNarcSourceAnalyzer(
+      List<InputFile> sourceFiles,
+      GroovyAstProvider astProvider,
+      int threads,
+      @Nullable CodeNarcRuleProfiler profiler,
+      @Nullable CodeNarcViolationCache violationCache) {
     this.sourceFiles = sourceFiles;
+    this.astProvider = astProvider;
+    this.threads = threads;
+    this.profiler = profiler;
+    this.violationCache = violationCache;
   }
 
   @Override
   public Results analyze(RuleSet ruleSet) {
-    List<FileResults> resultsByFile = processFiles(ruleSet);
+    RuleSet rules =
+        profiler != null ? profiler.profile(ruleSet, rule -> !readsLinesOnly(rule)) : ruleSet;
+    List<?> appliedRules = rules.getRules();
+    for (int i = 0; i < appliedRules.size(); i++) {
+      Rule rule = (Rule) ruleSet.getRules().get(i);
+      rulesByName.putIfAbsent(rule.getName(), rule);
+      (readsLinesOnly(rule) ? lineRules : astRules).add((Rule) appliedRules.get(i));
+    }
+    astRuleSet = new ListRuleSet(astRules);
+    LOG.debug(
+        "CodeNarc: {} rules read source lines only, {} rules need the AST",
+        lineRules.size(),
+        astRules.size());
+    List<FileResults> resultsByFile = processFiles(rules);
     DirectoryResults directoryResults = new DirectoryResults(".");
     resultsByFile.forEach(directoryResults::addChild);
     return directoryResults;
   }
 
+  /**
+   * Applies the rule set to the files on {@link #threads} worker threads. CodeNarc rules create
+   * their AST visitors per file, so the only shared state is the rule set configuration. Results
+   * are merged in the order of the source files, whatever the number of threads.
+   */
   private List<FileResults> processFiles(RuleSet ruleSet) {
-    List<FileResults> results = new LinkedList<>();
-    for (InputFile inputFile : sourceFiles) {
+    List<FileResults> results = new ArrayList<>();
+    ParallelExecution.forEachOrdered(
+        sourceFiles,
+        threads,
+        inputFile -> analyzeFile(inputFile, ruleSet),
+        fileViolations -> {
+          if (fileViolations.violations != null) {
+            violationsByFile.put(fileViolations.inputFile, fileViolations.violations);
+            results.add(
+                new FileResults(
+                    fileViolations.inputFile.uri().toString(), fileViolations.violations));
+          }
+        });
+    return results;
+  }
+
+  private FileViolations analyzeFile(InputFile inputFile, RuleSet ruleSet) {
+    String contentHash = null;
+    if (violationCache != null) {
+      contentHash = CodeNarcViolationCache.contentHash(inputFile);
+      List<Violation> cached =
+          contentHash != null ? violationCache.get(inputFile, contentHash, rulesByName) : null;
+      if (cached != null) {
+        astProvider.release(inputFile, Consumer.CODENARC);
+        return new FileViolations(inputFile, cached);
+      }
+    }
+
+    SourceCode sourceCode = astProvider.take(inputFile, Consumer.CODENARC);
+    List<Violation> violations = sourceCode != null ? violations(sourceCode, ruleSet) : null;
+    if (violations != null && contentHash != null) {
+      violationCache.put(inputFile, contentHash, violations);
+    }
+    return new FileViolations(inputFile, violations);
+  }
+
+  /**
+   * Files which may suppress violations go through CodeNarc as a whole, since it finds the
+   * suppressions in the AST. Otherwise only the rules needing the AST do, and the line rules are
+   * applied to the source directly: the file is parsed only if some AST rule is active, once for
+   * each compiler phase they require.
+   */
+  private List<Violation> violations(SourceCode sourceCode, RuleSet ruleSet) {
+    if (sourceCode.getText().contains(SUPPRESS_WARNINGS)) {
+      compile(sourceCode);
+      return collectViolations(sourceCode, ruleSet);
+    }
+    List<Violation> violations = new ArrayList<>();
+    if (!astRules.isEmpty()) {
+      compile(sourceCode);
+      violations.addAll(collectViolations(sourceCode, astRuleSet));
+    }
+    for (Rule rule : lineRules) {
       try {
-        List<Violation> violations = collectViolations(new SourceString(inputFile.contents()), ruleSet);
-        violationsByFile.put(inputFile, violations);
-        FileResults result = new FileResults(inputFile.uri().toString(), violations);
-        results.add(result);
-      } catch (IOException e) {
-        LOG.error("Could not read input file: " + inputFile.toString(), e);
+        violations.addAll(rule.applyTo(sourceCode));
+      } catch (Throwable e) {
+        throw new IllegalStateException(
+            "Error from CodeNarc rule " + rule.getName() + " on " + sourceCode.getPath(), e);
       }
     }
-    return results;
+    violations.sort(
+        Comparator.comparing(
+            Violation::getLineNumber, Comparator.nullsFirst(Comparator.naturalOrder())));
+    return violations;
+  }
+
+  private void compile(SourceCode sourceCode) {
+    if (profiler != null) {
+      // CodeNarc reads suppressions from the AST before applying any rule
+      profiler.compile(sourceCode);
+    }
+  }
+
+  /**
+   * Whether the rule is applied without going through CodeNarc's AST handling: any rule which is
+   * not an AST visitor and works on the default compiler phase. Such a rule which still reads the
+   * AST gets it parsed on demand, from the same source as the other rules.
+   */
+  static boolean readsLinesOnly(Rule rule) {
+    return !(rule instanceof AbstractAstVisitorRule)
+        && rule.getCompilerPhase() == SourceCode.DEFAULT_COMPILER_PHASE;
   }
 
   @Override
@@ -78,4 +191,13 @@ public class CodeNarcSourceAnalyzer extends AbstractSourceAnalyzer {
     return violationsByFile;
   }
 
+  private static class FileViolations {
+    private final InputFile inputFile;
+    @Nullable private final List<Violation> violations;
+
+    FileViolations(InputFile inputFile, @Nullable List<Violation> violations) {
+      this.inputFile = inputFile;
+      this.violations = violations;
+    }
+  }
 }
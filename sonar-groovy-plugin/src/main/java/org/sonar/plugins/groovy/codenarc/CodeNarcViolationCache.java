@@ -0,0 +1,348 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.codenarc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.io.IOUtils;
+import org.codenarc.CodeNarcRunner;
+import org.codenarc.rule.Rule;
+import org.codenarc.rule.Violation;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Persistent cache of the CodeNarc violations of each file, so that unchanged files need neither
+ * parsing nor rule execution.
+ *
+ * <p>Each module has its own cache file, rewritten at the end of each analysis with the files of
+ * that analysis only. Its name is derived from the module and from the rule set signature (active
+ * rules and their parameters) and the CodeNarc and plugin versions, so any change of the quality
+ * profile or of the analyzers starts from an empty cache, and the previous cache of the module is
+ * deleted. Inside it, each file is identified by its absolute path and a hash of its contents.
+ * Cache files which were not written for {@link #MAX_UNUSED_DAYS} days, such as those of removed
+ * modules, are deleted too.
+ */
+class CodeNarcViolationCache {
+
+  private static final Logger LOG = Loggers.get(CodeNarcViolationCache.class);
+
+  private static final String CACHE_FILE_PREFIX = "codenarc-";
+  private static final String CACHE_FILE_SUFFIX = ".cache";
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+  private static final int FORMAT_VERSION = 1;
+  static final int MAX_UNUSED_DAYS = 30;
+
+  private final Path cacheFile;
+  private final String modulePrefix;
+  private final Map<String, Entry> previous;
+  private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+  private CodeNarcViolationCache(Path cacheFile, String modulePrefix, Map<String, Entry> previous) {
+    this.cacheFile = cacheFile;
+    this.modulePrefix = modulePrefix;
+    this.previous = previous;
+  }
+
+  /**
+   * Loads the cache of the module matching the given rule set signature from {@code cacheDir}.
+   *
+   * @param moduleKey identifies the module among those sharing the cache directory
+   */
+  static CodeNarcViolationCache load(Path cacheDir, String moduleKey, String ruleSetSignature) {
+    String modulePrefix = CACHE_FILE_PREFIX + sha256(moduleKey).substring(0, 16) + '-';
+    String key = sha256(ruleSetSignature + '\n' + codeNarcVersion() + '\n' + pluginVersion());
+    Path cacheFile = cacheDir.resolve(modulePrefix + key + CACHE_FILE_SUFFIX);
+    Map<String, Entry> previous = Collections.emptyMap();
+    if (Files.isRegularFile(cacheFile)) {
+      try {
+        previous = read(cacheFile);
+      } catch (IOException e) {
+        LOG.warn("Ignoring unreadable CodeNarc cache {}: {}", cacheFile, e.getMessage());
+      }
+    }
+    LOG.info("CodeNarc cache {} holds {} files", cacheFile, previous.size());
+    return new CodeNarcViolationCache(cacheFile, modulePrefix, previous);
+  }
+
+  /**
+   * Hash identifying the current contents of the file, or null if it can not be read (the file is
+   * then analyzed as usual, which reports the error).
+   */
+  @CheckForNull
+  static String contentHash(InputFile inputFile) {
+    try {
+      return sha256(inputFile.contents());
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Violations of an unchanged file, rebuilt with the rules of the current rule set. The file is
+   * kept in the cache for the next analysis.
+   *
+   * @return the violations, or null if the file is not in the cache or has changed
+   */
+  @CheckForNull
+  List<Violation> get(InputFile inputFile, String contentHash, Map<String, Rule> rulesByName) {
+    String path = inputFile.uri().toString();
+    Entry entry = previous.get(path);
+    if (entry == null || !entry.contentHash.equals(contentHash)) {
+      return null;
+    }
+    List<Violation> violations = new ArrayList<>(entry.violations.size());
+    for (CachedViolation cached : entry.violations) {
+      Rule rule = rulesByName.get(cached.ruleName);
+      if (rule == null) {
+        // cannot happen with the same rule set, but never report an incomplete result
+        return null;
+      }
+      Violation violation = new Violation();
+      violation.setRule(rule);
+      violation.setLineNumber(cached.lineNumber);
+      violation.setSourceLine(cached.sourceLine);
+      violation.setMessage(cached.message);
+      violations.add(violation);
+    }
+    current.put(path, entry);
+    return violations;
+  }
+
+  void put(InputFile inputFile, String contentHash, List<Violation> violations) {
+    List<CachedViolation> cached = new ArrayList<>(violations.size());
+    for (Violation violation : violations) {
+      cached.add(
+          new CachedViolation(
+              violation.getRule().getName(),
+              violation.getLineNumber(),
+              violation.getSourceLine(),
+              violation.getMessage()));
+    }
+    current.put(inputFile.uri().toString(), new Entry(contentHash, cached));
+  }
+
+  /**
+   * Writes the files seen during this analysis, then deletes the stale cache files. Errors are only
+   * logged: the cache is an optimization.
+   */
+  void save() {
+    Path cacheDir = cacheFile.getParent();
+    try {
+      Files.createDirectories(cacheDir);
+      Path tempFile = Files.createTempFile(cacheDir, CACHE_FILE_PREFIX, TEMP_FILE_SUFFIX);
+      write(tempFile, current);
+      Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      LOG.warn("Unable to write CodeNarc cache {}", cacheFile, e);
+      return;
+    }
+    deleteStaleFiles(cacheDir);
+  }
+
+  /**
+   * Deletes the other caches of this module, written for another rule set or version, and the cache
+   * or temporary files of any module which were not written for {@link #MAX_UNUSED_DAYS} days.
+   */
+  private void deleteStaleFiles(Path cacheDir) {
+    long oldest = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_UNUSED_DAYS);
+    try (DirectoryStream<Path> files =
+        Files.newDirectoryStream(
+            cacheDir,
+            CACHE_FILE_PREFIX + "*{" + CACHE_FILE_SUFFIX + "," + TEMP_FILE_SUFFIX + "}")) {
+      for (Path file : files) {
+        if (!file.equals(cacheFile)
+            && ((file.getFileName().toString().startsWith(modulePrefix)
+                    && file.getFileName().toString().endsWith(CACHE_FILE_SUFFIX))
+                || Files.getLastModifiedTime(file).toMillis() < oldest)) {
+          Files.deleteIfExists(file);
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to delete stale CodeNarc caches of {}", cacheDir, e);
+    }
+  }
+
+  private static Map<String, Entry> read(Path file) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != FORMAT_VERSION) {
+        return Collections.emptyMap();
+      }
+      int entries = in.readInt();
+      Map<String, Entry> result = new ConcurrentHashMap<>(entries);
+      for (int i = 0; i < entries; i++) {
+        String path = readString(in);
+        String contentHash = readString(in);
+        int count = in.readInt();
+        List<CachedViolation> violations = new ArrayList<>(count);
+        for (int j = 0; j < count; j++) {
+          String ruleName = readString(in);
+          Integer lineNumber = in.readBoolean() ? in.readInt() : null;
+          violations.add(new CachedViolation(ruleName, lineNumber, readString(in), readString(in)));
+        }
+        result.put(path, new Entry(contentHash, violations));
+      }
+      return result;
+    }
+  }
+
+  private static void write(Path file, Map<String, Entry> entries) throws IOException {
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(entries.size());
+      for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+        writeString(out, entry.getKey());
+        writeString(out, entry.getValue().contentHash);
+        out.writeInt(entry.getValue().violations.size());
+        for (CachedViolation violation : entry.getValue().violations) {
+          writeString(out, violation.ruleName);
+          out.writeBoolean(violation.lineNumber != null);
+          if (violation.lineNumber != null) {
+            out.writeInt(violation.lineNumber);
+          }
+          writeString(out, violation.sourceLine);
+          writeString(out, violation.message);
+        }
+      }
+    }
+  }
+
+  /** Length-prefixed UTF-8, -1 for null: unlike writeUTF, has no 64 KB limit. */
+  private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  @CheckForNull
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static String codeNarcVersion() {
+    try (InputStream version = CodeNarcRunner.class.getResourceAsStream("/codenarc-version.txt")) {
+      return version != null ? IOUtils.toString(version, StandardCharsets.UTF_8).trim() : "";
+    } catch (IOException e) {
+      return "";
+    }
+  }
+
+  /** Version and build of the plugin, from the manifest of the plugin JAR when running from one. */
+  private static String pluginVersion() {
+    try {
+      Path location =
+          Paths.get(
+              CodeNarcViolationCache.class
+                  .getProtectionDomain()
+                  .getCodeSource()
+                  .getLocation()
+                  .toURI());
+      if (Files.isRegularFile(location)) {
+        try (JarFile jar = new JarFile(location.toFile())) {
+          Manifest manifest = jar.getManifest();
+          if (manifest != null) {
+            return manifest.getMainAttributes().getValue("Plugin-Version")
+                + '/'
+                + manifest.getMainAttributes().getValue("Implementation-Build");
+          }
+        }
+      }
+    } catch (Exception e) {
+      LOG.debug("Unable to read the plugin version", e);
+    }
+    return "";
+  }
+
+  private static String sha256(String value) {
+    try {
+      byte[] digest =
+          MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static class Entry {
+    private final String contentHash;
+    private final List<CachedViolation> violations;
+
+    Entry(String contentHash, List<CachedViolation> violations) {
+      this.contentHash = contentHash;
+      this.violations = violations;
+    }
+  }
+
+  private static class CachedViolation {
+    private final String ruleName;
+    @Nullable private final Integer lineNumber;
+    @Nullable private final String sourceLine;
+    @Nullable private final String message;
+
+    CachedViolation(
+        String ruleName,
+        @Nullable Integer lineNumber,
+        @Nullable String sourceLine,
+        @Nullable String message) {
+      this.ruleName = ruleName;
+      this.lineNumber = lineNumber;
+      this.sourceLine = sourceLine;
+      this.message = message;
+    }
+  }
+}
@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -21,34 +20,53 @@ package org.sonar.plugins.groovy.codenarc;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import javax.xml.stream.XMLStreamException;
 import org.apache.commons.lang.StringUtils;
 import org.codehaus.staxmate.in.SMHierarchicCursor;
 import org.codehaus.staxmate.in.SMInputCursor;
-import org.sonar.api.batch.fs.FilePredicates;
 import org.sonar.api.batch.fs.FileSystem;
-import org.sonar.api.batch.fs.InputFile.Type;
+import org.sonar.api.batch.fs.InputFile;
 import org.sonar.plugins.groovy.utils.StaxParser;
 
+/**
+ * Reads the violations of a CodeNarc XML report. Violations are handed over one at a time while the
+ * report is read, so that the report never has to be held in memory as a whole.
+ */
 public final class CodeNarcXMLParser implements StaxParser.XmlStreamHandler {
 
-  private final List<CodeNarcViolation> result = new ArrayList<>();
-  private final FileSystem fileSystem;
+  private final CodeNarcFileIndex fileIndex;
+  private final Consumer<CodeNarcViolation> violationConsumer;
+  /** Rule names and file paths repeat across violations, only one instance of each is kept. */
+  private final Map<String, String> strings = new HashMap<>();
 
-  private CodeNarcXMLParser(final FileSystem fileSystem) {
-    this.fileSystem = fileSystem;
+  private CodeNarcXMLParser(
+      CodeNarcFileIndex fileIndex, Consumer<CodeNarcViolation> violationConsumer) {
+    this.fileIndex = fileIndex;
+    this.violationConsumer = violationConsumer;
   }
 
   public static List<CodeNarcViolation> parse(File file, FileSystem fileSystem) {
-    CodeNarcXMLParser handler = new CodeNarcXMLParser(fileSystem);
+    List<CodeNarcViolation> result = new ArrayList<>();
+    parse(file, new CodeNarcFileIndex(fileSystem), result::add);
+    return result;
+  }
+
+  /** Streams the violations of the report to the given consumer, in the order of the report. */
+  static void parse(
+      File file, CodeNarcFileIndex fileIndex, Consumer<CodeNarcViolation> violationConsumer) {
+    CodeNarcXMLParser handler = new CodeNarcXMLParser(fileIndex, violationConsumer);
     try {
       new StaxParser(handler).parse(file);
     } catch (XMLStreamException e) {
       throw new IllegalStateException("Unabel to parse file: " + file, e);
     }
-    return handler.result;
   }
 
   @Override
@@ -66,25 +84,47 @@ public final class CodeNarcXMLParser implements StaxParser.XmlStreamHandler {
     }
   }
 
-  private void extractIssues(SMInputCursor items, List<String> sourceDirectories) throws XMLStreamException {
+  private void extractIssues(SMInputCursor items, List<String> sourceDirectories)
+      throws XMLStreamException {
     String packPath = items.getAttrValue("path");
     SMInputCursor file = items.descendantElementCursor("File");
     while (file.getNext() != null) {
-      String filename = getFilename(sourceDirectories, packPath, file.getAttrValue("name"));
+      String attrFilename = file.getAttrValue("name");
+      String filename = packPath + "/" + attrFilename;
+      InputFile inputFile = null;
+      for (String directory : sourceDirectories) {
+        inputFile = fileIndex.inputFile(directory + filename);
+        if (inputFile != null) {
+          filename = directory + filename;
+          break;
+        }
+      }
+      if (inputFile == null) {
+        inputFile = fileIndex.inputFile(filename);
+      }
+      filename = canonical(filename);
       SMInputCursor violation = file.childElementCursor("Violation");
       while (violation.getNext() != null) {
         String lineNumber = violation.getAttrValue("lineNumber");
-        String ruleName = violation.getAttrValue("ruleName");
+        String ruleName = canonical(violation.getAttrValue("ruleName"));
 
         SMInputCursor messageCursor = violation.childElementCursor("Message");
-        String message = messageCursor.getNext() == null ? "" : messageCursor.collectDescendantText(true);
+        String message =
+            messageCursor.getNext() == null ? "" : messageCursor.collectDescendantText(true);
 
-        result.add(new CodeNarcViolation(ruleName, filename, lineNumber, message));
+        violationConsumer.accept(
+            new CodeNarcViolation(ruleName, filename, inputFile, lineNumber, message));
       }
     }
   }
 
-  private static void extractSourceDirectories(SMInputCursor items, List<String> sourceDirectories) throws XMLStreamException {
+  @Nullable
+  private String canonical(@Nullable String value) {
+    return value == null ? null : strings.computeIfAbsent(value, v -> v);
+  }
+
+  private static void extractSourceDirectories(SMInputCursor items, List<String> sourceDirectories)
+      throws XMLStreamException {
     SMInputCursor sourceDirectoryCursor = items.descendantElementCursor("SourceDirectory");
     while (sourceDirectoryCursor.getNext() != null) {
       String value = sourceDirectoryCursor.getElemStringValue();
@@ -94,26 +134,26 @@ public final class CodeNarcXMLParser implements StaxParser.XmlStreamHandler {
     }
   }
 
-  private String getFilename(List<String> sourceDirectories, String packPath, String attrFilename) throws XMLStreamException {
-    FilePredicates pred = fileSystem.predicates();
-    for (String directory : sourceDirectories) {
-      String path = directory + packPath + "/" + attrFilename;
-      if (fileSystem.hasFiles(pred.and(pred.hasType(Type.MAIN), pred.hasAbsolutePath(path)))) {
-        return path;
-      }
-    }
-    return packPath + "/" + attrFilename;
-  }
-
   public static class CodeNarcViolation {
     private final String ruleName;
     private final String filename;
+    @Nullable private final InputFile inputFile;
     private final Integer line;
     private final String message;
 
     public CodeNarcViolation(String ruleName, String filename, String lineNumber, String message) {
+      this(ruleName, filename, null, lineNumber, message);
+    }
+
+    public CodeNarcViolation(
+        String ruleName,
+        String filename,
+        @Nullable InputFile inputFile,
+        String lineNumber,
+        String message) {
       this.ruleName = ruleName;
       this.filename = filename;
+      this.inputFile = inputFile;
       this.line = StringUtils.isBlank(lineNumber) ? null : Integer.parseInt(lineNumber);
       this.message = message;
     }
@@ -126,6 +166,12 @@ public final class CodeNarcXMLParser implements StaxParser.XmlStreamHandler {
       return filename;
     }
 
+    /** Main file of the module the violation is on, if any. */
+    @CheckForNull
+    public InputFile getInputFile() {
+      return inputFile;
+    }
+
     public Integer getLine() {
       return line;
     }
@@ -133,7 +179,5 @@ public final class CodeNarcXMLParser implements StaxParser.XmlStreamHandler {
     public String getMessage() {
       return message;
     }
-
   }
-
 }
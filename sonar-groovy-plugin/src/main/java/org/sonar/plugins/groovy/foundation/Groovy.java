@@ -76,6 +76,8 @@ public class Groovy extends AbstractLanguage {
     return Arrays.asList(
         Groovy.class,
         GroovyFileSystem.class,
+        GroovyAstProvider.class,
+        GroovyTypeIndex.class,
         PropertyDefinition.builder(FILE_SUFFIXES_KEY)
             .name("File suffixes")
             .description(
@@ -0,0 +1,186 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.foundation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.codenarc.source.SourceCode;
+import org.codenarc.source.SourceString;
+import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Parses each main Groovy file once and shares the resulting {@link SourceCode} (and its lazily
+ * built AST) between the analyses that need it. Analyses {@link #expect register} when they are
+ * created. A file is kept only until every expected consumer has taken it or has {@link #finish
+ * finished}, and only through a soft reference: when memory runs short the source is dropped, and
+ * parsed again by the next consumer taking it.
+ *
+ * <p>The AST is compiled up to CodeNarc's default phase (conversion), which is also all the metrics
+ * computation needs.
+ */
+@ScannerSide
+public class GroovyAstProvider {
+
+  private static final Logger LOG = Loggers.get(GroovyAstProvider.class);
+
+  /** Analyses that read the AST of main files. */
+  public enum Consumer {
+    METRICS,
+    CODENARC
+  }
+
+  private volatile Set<Consumer> consumers = EnumSet.noneOf(Consumer.class);
+  private final Map<InputFile, SharedSourceCode> cache = new ConcurrentHashMap<>();
+
+  /**
+   * Tells that the given consumer will take the main files, so that files parsed before it are kept
+   * for it. Called by the analyses when they are created, before any file is taken.
+   */
+  public synchronized void expect(Consumer consumer) {
+    Set<Consumer> expected = EnumSet.noneOf(Consumer.class);
+    expected.addAll(consumers);
+    expected.add(consumer);
+    consumers = expected;
+  }
+
+  /**
+   * Returns the parsed source of a main file for the given consumer, parsing it only if no other
+   * consumer did already. Each consumer must take a file at most once.
+   *
+   * @return the source code, or null if the file could not be read
+   */
+  @CheckForNull
+  public SourceCode take(InputFile inputFile, Consumer consumer) {
+    return take(inputFile, null, consumer);
+  }
+
+  /**
+   * Same as {@link #take(InputFile, Consumer)}, parsing the text already read by the lexer if the
+   * file must be parsed.
+   */
+  @CheckForNull
+  public SourceCode take(GroovyLexedFile lexedFile, Consumer consumer) {
+    if (lexedFile.contents() == null) {
+      // already reported by the lexer
+      return null;
+    }
+    return take(lexedFile.inputFile(), lexedFile.contents(), consumer);
+  }
+
+  @CheckForNull
+  private SourceCode take(InputFile inputFile, @Nullable String contents, Consumer consumer) {
+    try {
+      if (!consumers.contains(consumer)) {
+        return parse(inputFile, contents);
+      }
+      SourceCode[] taken = new SourceCode[1];
+      cache.compute(
+          inputFile,
+          (file, shared) -> {
+            SharedSourceCode current = shared != null ? shared : new SharedSourceCode(consumers);
+            taken[0] = current.sourceCode(file, contents);
+            return current.done(consumer);
+          });
+      return taken[0];
+    } catch (UncheckedIOException e) {
+      LOG.error("Could not read input file: " + inputFile, e.getCause());
+      return null;
+    }
+  }
+
+  /**
+   * Tells that the given consumer does not need the file, e.g. because it got its results from
+   * elsewhere. The file is then not kept for it.
+   */
+  public void release(InputFile inputFile, Consumer consumer) {
+    if (consumers.contains(consumer)) {
+      cache.compute(
+          inputFile,
+          (file, shared) ->
+              (shared != null ? shared : new SharedSourceCode(consumers)).done(consumer));
+    }
+  }
+
+  /**
+   * Tells that the given consumer is done with all files, e.g. at the end of its sensor. Files it
+   * did not take are not kept for it anymore, and it gets freshly parsed sources from now on.
+   */
+  public synchronized void finish(Consumer consumer) {
+    Set<Consumer> remaining = EnumSet.noneOf(Consumer.class);
+    remaining.addAll(consumers);
+    remaining.remove(consumer);
+    consumers = remaining;
+    for (InputFile inputFile : cache.keySet()) {
+      cache.computeIfPresent(inputFile, (file, shared) -> shared.done(consumer));
+    }
+  }
+
+  /** Number of files still waiting for a consumer. */
+  int pendingFiles() {
+    return cache.size();
+  }
+
+  private static SourceCode parse(InputFile inputFile, @Nullable String contents) {
+    try {
+      return new SourceString(
+          contents != null ? contents : inputFile.contents(),
+          inputFile.absolutePath(),
+          inputFile.filename());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static class SharedSourceCode {
+    private SoftReference<SourceCode> sourceCode = new SoftReference<>(null);
+    private final Set<Consumer> pendingConsumers;
+
+    SharedSourceCode(Set<Consumer> consumers) {
+      this.pendingConsumers = EnumSet.noneOf(Consumer.class);
+      pendingConsumers.addAll(consumers);
+    }
+
+    /** The shared source, parsed again if it was never parsed or collected since. */
+    SourceCode sourceCode(InputFile inputFile, @Nullable String contents) {
+      SourceCode current = sourceCode.get();
+      if (current == null) {
+        current = parse(inputFile, contents);
+        sourceCode = new SoftReference<>(current);
+      }
+      return current;
+    }
+
+    /** Marks the consumer as done, returns the entry to keep or null when nobody waits for it. */
+    @Nullable
+    SharedSourceCode done(Consumer consumer) {
+      pendingConsumers.remove(consumer);
+      return pendingConsumers.isEmpty() ? null : this;
+    }
+  }
+}
@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -23,6 +22,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.batch.fs.FilePredicate;
 import org.sonar.api.batch.fs.FilePredicates;
@@ -30,6 +30,11 @@ import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.InputFile.Type;
 
+/**
+ * Groovy files of the module. Files are also looked up by the end of their path, as given by
+ * coverage and test reports, through an index built on first use: files must not be added to the
+ * file system afterwards.
+ */
 @ScannerSide
 public class GroovyFileSystem {
 
@@ -37,6 +42,7 @@ public class GroovyFileSystem {
   private final FilePredicates predicates;
   private final FilePredicate isGroovyLanguage;
   private final FilePredicate isMainTypeFile;
+  @Nullable private volatile PathSuffixIndex pathIndex;
 
   public GroovyFileSystem(FileSystem fileSystem) {
     this.fileSystem = fileSystem;
@@ -64,11 +70,65 @@ public class GroovyFileSystem {
     return list;
   }
 
+  /**
+   * The main Groovy file whose path ends with the given path.
+   *
+   * @throws IllegalArgumentException if there are several such files
+   */
   @CheckForNull
-  public InputFile sourceInputFileFromRelativePath(String relativePath) {
-    return fileSystem.inputFile(
-        predicates.and(
-            predicates.matchesPathPattern("**/" + relativePath), isGroovyLanguage, isMainTypeFile));
+  public InputFile sourceInputFileFromRelativePath(@Nullable String relativePath) {
+    if (relativePath == null) {
+      return null;
+    }
+    List<InputFile> files = inputFilesEndingWith(relativePath, Type.MAIN);
+    if (files.size() > 1) {
+      throw new IllegalArgumentException(
+          "Expected only one main Groovy file ending with " + relativePath + ", got " + files);
+    }
+    return files.isEmpty() ? null : files.get(0);
+  }
+
+  /** The Groovy file at exactly the given path, relative to the module base directory. */
+  @CheckForNull
+  public InputFile groovyInputFile(String relativePath) {
+    return pathIndex().exact(relativePath);
+  }
+
+  /**
+   * The Groovy files of the given type whose path ends with the given path, on whole path segments:
+   * {@code foo/Bar.groovy} matches {@code src/foo/Bar.groovy} but not {@code src/xfoo/Bar.groovy}.
+   * More than one file means that the path is ambiguous.
+   */
+  public List<InputFile> inputFilesEndingWith(String path, Type type) {
+    List<InputFile> files = new ArrayList<>(1);
+    for (InputFile inputFile : inputFilesEndingWith(path)) {
+      if (inputFile.type() == type) {
+        files.add(inputFile);
+      }
+    }
+    return files;
+  }
+
+  /** Same as {@link #inputFilesEndingWith(String, Type)}, for files of any type. */
+  public List<InputFile> inputFilesEndingWith(String path) {
+    return pathIndex().endingWith(path);
+  }
+
+  private PathSuffixIndex pathIndex() {
+    PathSuffixIndex index = pathIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = pathIndex;
+        if (index == null) {
+          index = new PathSuffixIndex();
+          for (InputFile inputFile : fileSystem.inputFiles(isGroovyLanguage)) {
+            index.add(inputFile.relativePath(), inputFile);
+          }
+          pathIndex = index;
+        }
+      }
+    }
+    return index;
   }
 
   public File baseDir() {
@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -20,12 +19,6 @@
 package org.sonar.plugins.groovy.foundation;
 
 import groovyjarjarantlr.Token;
-import groovyjarjarantlr.TokenStream;
-import groovyjarjarantlr.TokenStreamException;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -40,13 +33,9 @@ import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.cpd.NewCpdTokens;
 import org.sonar.api.batch.sensor.highlighting.NewHighlighting;
 import org.sonar.api.batch.sensor.highlighting.TypeOfText;
-import org.sonar.api.utils.log.Logger;
-import org.sonar.api.utils.log.Loggers;
 
 public class GroovyHighlighterAndTokenizer {
 
-  private static final Logger LOG = Loggers.get(GroovyHighlighterAndTokenizer.class);
-
   private static final int[] KEYWORDS = {
     GroovyLexer.LITERAL_as,
     GroovyLexer.LITERAL_assert,
@@ -137,63 +126,81 @@ public class GroovyHighlighterAndTokenizer {
   };
 
   private static final int[] COMMENTS = {
-    GroovyLexer.ML_COMMENT,
-    GroovyLexer.SH_COMMENT,
-    GroovyLexer.SL_COMMENT
+    GroovyLexer.ML_COMMENT, GroovyLexer.SH_COMMENT, GroovyLexer.SL_COMMENT
   };
 
-  private static final List<TypeOfTextToTokenTypes> HIGHLIGHTING_MAPPING = Arrays.asList(
-    new TypeOfTextToTokenTypes(TypeOfText.KEYWORD, KEYWORDS),
-    new TypeOfTextToTokenTypes(TypeOfText.STRING, STRINGS),
-    new TypeOfTextToTokenTypes(TypeOfText.CONSTANT, CONSTANTS),
-    new TypeOfTextToTokenTypes(TypeOfText.COMMENT, COMMENTS));
+  private static final List<TypeOfTextToTokenTypes> HIGHLIGHTING_MAPPING =
+      Arrays.asList(
+          new TypeOfTextToTokenTypes(TypeOfText.KEYWORD, KEYWORDS),
+          new TypeOfTextToTokenTypes(TypeOfText.STRING, STRINGS),
+          new TypeOfTextToTokenTypes(TypeOfText.CONSTANT, CONSTANTS),
+          new TypeOfTextToTokenTypes(TypeOfText.COMMENT, COMMENTS));
 
   private final InputFile inputFile;
-  private final File file;
+  private final List<GroovyToken> tokens = new ArrayList<>();
   private boolean isAnnotation;
 
   public GroovyHighlighterAndTokenizer(InputFile inputFile) {
     this.inputFile = inputFile;
-    this.file = inputFile.file();
   }
 
   public void processFile(SensorContext context) {
-    List<GroovyToken> tokens = new ArrayList<>();
-    isAnnotation = false;
+    processFile(context, GroovyLexedFile.lex(inputFile));
+  }
 
-    try (InputStreamReader streamReader = new InputStreamReader(new FileInputStream(file), context.fileSystem().encoding())) {
-      GroovyLexer groovyLexer = new GroovyLexer(streamReader);
-      groovyLexer.setWhitespaceIncluded(true);
-      TokenStream tokenStream = groovyLexer.plumb();
-      Token token = tokenStream.nextToken();
+  /** Highlights and tokenizes the file from an already computed lexing pass. */
+  public void processFile(SensorContext context, GroovyLexedFile lexedFile) {
+    tokenize(lexedFile).save(context);
+  }
 
-      int type = token.getType();
-      while (type != Token.EOF_TYPE) {
-        String text = token.getText();
-        TypeOfText typeOfText = typeOfText(type, text).orElse(null);
-        GroovySourceToken gst = (GroovySourceToken) token;
-        if (StringUtils.isNotBlank(text)) {
-          tokens.add(new GroovyToken(token.getLine(), token.getColumn(), gst.getLineLast(), gst.getColumnLast(), getImage(token, text), typeOfText));
-        }
-        token = tokenStream.nextToken();
-        type = token.getType();
+  /**
+   * Computes highlighting and CPD tokens without touching the sensor context, so that it can run on
+   * a worker thread. Results are saved by {@link #save(SensorContext)}.
+   */
+  public GroovyHighlighterAndTokenizer tokenize(GroovyLexedFile lexedFile) {
+    tokens.clear();
+    isAnnotation = false;
+
+    for (GroovySourceToken gst : lexedFile.tokens()) {
+      String text = gst.getText();
+      TypeOfText typeOfText = typeOfText(gst.getType(), text).orElse(null);
+      if (StringUtils.isNotBlank(text)) {
+        tokens.add(
+            new GroovyToken(
+                gst.getLine(),
+                gst.getColumn(),
+                gst.getLineLast(),
+                gst.getColumnLast(),
+                getImage(gst, text),
+                typeOfText));
       }
-    } catch (TokenStreamException e) {
-      LOG.error("Unexpected token when lexing file: " + file.getName(), e);
-    } catch (IOException e) {
-      LOG.error("Unable to read file: " + file.getName(), e);
     }
+    return this;
+  }
 
+  public void save(SensorContext context) {
     if (!tokens.isEmpty()) {
       boolean isNotTest = inputFile.type() != InputFile.Type.TEST;
       NewCpdTokens cpdTokens = isNotTest ? context.newCpdTokens().onFile(inputFile) : null;
       NewHighlighting highlighting = context.newHighlighting().onFile(inputFile);
       for (GroovyToken groovyToken : tokens) {
         if (isNotTest) {
-          cpdTokens = cpdTokens.addToken(groovyToken.startLine, groovyToken.startColumn, groovyToken.endLine, groovyToken.endColumn, groovyToken.value);
+          cpdTokens =
+              cpdTokens.addToken(
+                  groovyToken.startLine,
+                  groovyToken.startColumn,
+                  groovyToken.endLine,
+                  groovyToken.endColumn,
+                  groovyToken.value);
         }
         if (groovyToken.typeOfText != null) {
-          highlighting = highlighting.highlight(groovyToken.startLine, groovyToken.startColumn, groovyToken.endLine, groovyToken.endColumn, groovyToken.typeOfText);
+          highlighting =
+              highlighting.highlight(
+                  groovyToken.startLine,
+                  groovyToken.startColumn,
+                  groovyToken.endLine,
+                  groovyToken.endColumn,
+                  groovyToken.typeOfText);
         }
       }
       highlighting.save();
@@ -205,9 +212,9 @@ public class GroovyHighlighterAndTokenizer {
 
   private String getImage(Token token, String text) {
     if (token.getType() == GroovyTokenTypes.STRING_LITERAL
-      || token.getType() == GroovyTokenTypes.STRING_CTOR_START
-      || token.getType() == GroovyTokenTypes.STRING_CTOR_MIDDLE
-      || token.getType() == GroovyTokenTypes.STRING_CTOR_END) {
+        || token.getType() == GroovyTokenTypes.STRING_CTOR_START
+        || token.getType() == GroovyTokenTypes.STRING_CTOR_MIDDLE
+        || token.getType() == GroovyTokenTypes.STRING_CTOR_END) {
       return "LITERAL";
     }
     return text;
@@ -242,10 +249,15 @@ public class GroovyHighlighterAndTokenizer {
     final int endLine;
     final int endColumn;
     final String value;
-    @Nullable
-    final TypeOfText typeOfText;
+    @Nullable final TypeOfText typeOfText;
 
-    public GroovyToken(int startLine, int startColumn, int endLine, int endColumn, String value, @Nullable TypeOfText typeOfText) {
+    public GroovyToken(
+        int startLine,
+        int startColumn,
+        int endLine,
+        int endColumn,
+        String value,
+        @Nullable TypeOfText typeOfText) {
       this.startLine = startLine;
       this.startColumn = startColumn - 1;
       this.endLine = endLine;
@@ -0,0 +1,138 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.foundation;
+
+import groovyjarjarantlr.Token;
+import groovyjarjarantlr.TokenStream;
+import groovyjarjarantlr.TokenStreamException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.io.IOUtils;
+import org.codehaus.groovy.antlr.GroovySourceToken;
+import org.codehaus.groovy.antlr.parser.GroovyLexer;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Result of a single lexing pass over a Groovy file: the source lines and the token stream
+ * (whitespace included). Shared by the base metrics computation and the highlighter, so that each
+ * file is read and lexed only once.
+ */
+public final class GroovyLexedFile {
+
+  private static final Logger LOG = Loggers.get(GroovyLexedFile.class);
+
+  private final InputFile inputFile;
+  @Nullable private final String contents;
+  private final List<String> lines;
+  private final List<GroovySourceToken> tokens;
+  private final int endLine;
+  private final boolean complete;
+
+  private GroovyLexedFile(
+      InputFile inputFile,
+      @Nullable String contents,
+      List<String> lines,
+      List<GroovySourceToken> tokens,
+      int endLine,
+      boolean complete) {
+    this.inputFile = inputFile;
+    this.contents = contents;
+    this.lines = lines;
+    this.tokens = tokens;
+    this.endLine = endLine;
+    this.complete = complete;
+  }
+
+  public static GroovyLexedFile lex(InputFile inputFile) {
+    String contents;
+    try {
+      contents = inputFile.contents();
+    } catch (IOException e) {
+      LOG.error("Unable to read file: {}", inputFile, e);
+      return new GroovyLexedFile(
+          inputFile, null, Collections.emptyList(), Collections.emptyList(), 0, false);
+    }
+
+    List<String> lines;
+    try {
+      lines = IOUtils.readLines(new StringReader(contents));
+    } catch (IOException e) {
+      // cannot happen when reading from a String
+      throw new IllegalStateException(e);
+    }
+
+    List<GroovySourceToken> tokens = new ArrayList<>();
+    int endLine = 0;
+    boolean complete = true;
+    GroovyLexer groovyLexer = new GroovyLexer(new StringReader(contents));
+    groovyLexer.setWhitespaceIncluded(true);
+    TokenStream tokenStream = groovyLexer.plumb();
+    try {
+      Token token = tokenStream.nextToken();
+      while (token.getType() != Token.EOF_TYPE) {
+        tokens.add((GroovySourceToken) token);
+        token = tokenStream.nextToken();
+      }
+      endLine = token.getLine();
+    } catch (TokenStreamException e) {
+      LOG.error("Unexpected token when lexing file: {}", inputFile, e);
+      complete = false;
+    }
+    return new GroovyLexedFile(inputFile, contents, lines, tokens, endLine, complete);
+  }
+
+  public InputFile inputFile() {
+    return inputFile;
+  }
+
+  /** Text of the file, or null if it could not be read. */
+  @CheckForNull
+  public String contents() {
+    return contents;
+  }
+
+  public List<String> lines() {
+    return lines;
+  }
+
+  /**
+   * Tokens in source order, without the EOF token. When lexing failed, only the tokens read before
+   * the error are available.
+   */
+  public List<GroovySourceToken> tokens() {
+    return tokens;
+  }
+
+  /** Line of the EOF token, only meaningful when {@link #isComplete()}. */
+  public int endLine() {
+    return endLine;
+  }
+
+  /** Whether the whole file could be lexed, up to and including the EOF token. */
+  public boolean isComplete() {
+    return complete;
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.foundation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+import org.apache.commons.io.FilenameUtils;
+import org.codehaus.groovy.antlr.GroovySourceToken;
+import org.codehaus.groovy.antlr.parser.GroovyTokenTypes;
+import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.batch.fs.InputFile;
+
+/**
+ * Files of the classes, interfaces, enums and traits declared in Groovy files, by fully qualified
+ * name ({@code org.foo.Outer$Inner} for inner types), and of the script class each file may compile
+ * to, named after the file. Declarations are read from the tokens of each file: {@link
+ * #add(InputFile, GroovyLexedFile)} records the files lexed by the sensor, and files which were not
+ * are lexed on the first lookup. This resolves classes whose file path does not follow their
+ * package, or which share a file with other classes.
+ */
+@ScannerSide
+public class GroovyTypeIndex {
+
+  private final GroovyFileSystem groovyFileSystem;
+  private final Map<String, InputFile> filesByType = new ConcurrentHashMap<>();
+  private final Set<InputFile> indexedFiles = ConcurrentHashMap.newKeySet();
+  private final Set<String> packages = ConcurrentHashMap.newKeySet();
+  private volatile boolean complete;
+
+  public GroovyTypeIndex(GroovyFileSystem groovyFileSystem) {
+    this.groovyFileSystem = groovyFileSystem;
+  }
+
+  /** Records the package and the types declared in an already lexed file. Thread-safe. */
+  public void add(InputFile inputFile, GroovyLexedFile lexedFile) {
+    if (indexedFiles.add(inputFile)) {
+      for (String type : declaredTypes(lexedFile.tokens())) {
+        filesByType.putIfAbsent(type, inputFile);
+      }
+      String packageName = packageName(lexedFile.tokens());
+      packages.add(packageName);
+      String scriptClass = FilenameUtils.getBaseName(inputFile.filename());
+      filesByType.putIfAbsent(
+          packageName.isEmpty() ? scriptClass : (packageName + "." + scriptClass), inputFile);
+    }
+  }
+
+  /** The file declaring the given type, if any. */
+  @CheckForNull
+  public InputFile inputFile(String fullyQualifiedName) {
+    if (!complete) {
+      indexRemainingFiles();
+    }
+    return filesByType.get(fullyQualifiedName);
+  }
+
+  /**
+   * Packages of the Groovy files, {@code ""} being the default package, whether the files declare
+   * types or are scripts. Lexes the files which were not indexed yet.
+   */
+  public Set<String> packages() {
+    if (!complete) {
+      indexRemainingFiles();
+    }
+    return Collections.unmodifiableSet(packages);
+  }
+
+  private synchronized void indexRemainingFiles() {
+    if (!complete) {
+      for (InputFile inputFile : groovyFileSystem.groovyInputFiles()) {
+        if (!indexedFiles.contains(inputFile)) {
+          add(inputFile, GroovyLexedFile.lex(inputFile));
+        }
+      }
+      complete = true;
+    }
+  }
+
+  /**
+   * Fully qualified names of the types declared at the top level of the tokens, or directly in the
+   * body of such a type.
+   */
+  static List<String> declaredTypes(List<GroovySourceToken> tokens) {
+    List<String> types = new ArrayList<>();
+    String packagePrefix = "";
+    // names of the enclosing types, with the brace depth of their bodies
+    Deque<String> enclosingTypes = new ArrayDeque<>();
+    Deque<Integer> enclosingDepths = new ArrayDeque<>();
+    String pendingType = null;
+    int depth = 0;
+    int previous = GroovyTokenTypes.EOF;
+
+    for (int i = 0; i < tokens.size(); i++) {
+      int type = tokens.get(i).getType();
+      if (isWhitespace(type)) {
+        continue;
+      }
+      if (type == GroovyTokenTypes.LITERAL_package && depth == 0) {
+        StringBuilder packageName = new StringBuilder();
+        i = qualifiedName(tokens, i + 1, packageName);
+        packagePrefix = packageName.length() > 0 ? (packageName + ".") : "";
+        continue;
+      }
+      if (isTypeKeyword(type) && previous != GroovyTokenTypes.DOT) {
+        int name = nextSignificant(tokens, i + 1);
+        boolean declarable =
+            enclosingDepths.isEmpty() ? depth == 0 : depth == enclosingDepths.peek();
+        if (name < tokens.size()
+            && tokens.get(name).getType() == GroovyTokenTypes.IDENT
+            && declarable) {
+          String simpleName = tokens.get(name).getText();
+          pendingType =
+              enclosingTypes.isEmpty()
+                  ? (packagePrefix + simpleName)
+                  : (enclosingTypes.peek() + "$" + simpleName);
+          types.add(pendingType);
+          i = name;
+          previous = GroovyTokenTypes.IDENT;
+          continue;
+        }
+      }
+      if (type == GroovyTokenTypes.LCURLY) {
+        depth++;
+        if (pendingType != null) {
+          enclosingTypes.push(pendingType);
+          enclosingDepths.push(depth);
+          pendingType = null;
+        }
+      } else if (type == GroovyTokenTypes.RCURLY) {
+        if (!enclosingDepths.isEmpty() && enclosingDepths.peek() == depth) {
+          enclosingTypes.pop();
+          enclosingDepths.pop();
+        }
+        depth--;
+      }
+      previous = type;
+    }
+    return types;
+  }
+
+  /** Package declared by the tokens, {@code ""} for the default package. */
+  static String packageName(List<GroovySourceToken> tokens) {
+    for (int i = 0; i < tokens.size(); i++) {
+      int type = tokens.get(i).getType();
+      if (type == GroovyTokenTypes.LITERAL_package) {
+        StringBuilder packageName = new StringBuilder();
+        qualifiedName(tokens, i + 1, packageName);
+        return packageName.toString();
+      }
+      if (type == GroovyTokenTypes.LCURLY || isTypeKeyword(type)) {
+        // the package declaration comes first
+        break;
+      }
+    }
+    return "";
+  }
+
+  /** Reads {@code a.b.c} from the given index, returns the index of its last token. */
+  private static int qualifiedName(List<GroovySourceToken> tokens, int from, StringBuilder name) {
+    int last = from - 1;
+    int expected = GroovyTokenTypes.IDENT;
+    int i = nextSignificant(tokens, from);
+    while (i < tokens.size()) {
+      int type = tokens.get(i).getType();
+      if (type != expected) {
+        // a statement may follow the name on the next line
+        break;
+      }
+      expected = type == GroovyTokenTypes.IDENT ? GroovyTokenTypes.DOT : GroovyTokenTypes.IDENT;
+      name.append(tokens.get(i).getText());
+      last = i;
+      i = nextSignificant(tokens, i + 1);
+    }
+    return last;
+  }
+
+  private static int nextSignificant(List<GroovySourceToken> tokens, int from) {
+    int i = from;
+    while (i < tokens.size() && isWhitespace(tokens.get(i).getType())) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isTypeKeyword(int type) {
+    return type == GroovyTokenTypes.LITERAL_class
+        || type == GroovyTokenTypes.LITERAL_interface
+        || type == GroovyTokenTypes.LITERAL_enum
+        || type == GroovyTokenTypes.LITERAL_trait;
+  }
+
+  private static boolean isWhitespace(int type) {
+    return type == GroovyTokenTypes.WS
+        || type == GroovyTokenTypes.NLS
+        || type == GroovyTokenTypes.ONE_NL
+        || type == GroovyTokenTypes.SL_COMMENT
+        || type == GroovyTokenTypes.ML_COMMENT
+        || type == GroovyTokenTypes.SH_COMMENT;
+  }
+}
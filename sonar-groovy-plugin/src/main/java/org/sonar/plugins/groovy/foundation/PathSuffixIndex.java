@@ -0,0 +1,98 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.foundation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.batch.fs.InputFile;
+
+/**
+ * Trie of file paths by reversed path segments: {@code org/foo/Bar.groovy} is stored under {@code
+ * Bar.groovy}, then {@code foo}, then {@code org}. Every node keeps the files of its sub-tree, so
+ * that the files whose path ends with some segments are found in time proportional to the number of
+ * segments, whatever the number of files.
+ */
+class PathSuffixIndex {
+
+  private final Node root = new Node();
+
+  void add(String relativePath, InputFile inputFile) {
+    Node node = root;
+    List<String> segments = reversedSegments(relativePath);
+    for (String segment : segments) {
+      node = node.children.computeIfAbsent(segment, s -> new Node());
+      node.files.add(inputFile);
+    }
+    node.file = inputFile;
+  }
+
+  /** The file at exactly this relative path. */
+  @CheckForNull
+  InputFile exact(String relativePath) {
+    Node node = find(relativePath);
+    return node != null ? node.file : null;
+  }
+
+  /** The files whose relative path ends with the given path, on whole segments. */
+  List<InputFile> endingWith(String path) {
+    Node node = find(path);
+    return node != null ? Collections.unmodifiableList(node.files) : Collections.emptyList();
+  }
+
+  @Nullable
+  private Node find(String path) {
+    List<String> segments = reversedSegments(path);
+    if (segments.isEmpty()) {
+      return null;
+    }
+    Node node = root;
+    for (String segment : segments) {
+      node = node.children.get(segment);
+      if (node == null) {
+        return null;
+      }
+    }
+    return node;
+  }
+
+  private static List<String> reversedSegments(String path) {
+    List<String> segments = new ArrayList<>();
+    int end = path.length();
+    for (int i = path.length() - 1; i >= -1; i--) {
+      if (i < 0 || path.charAt(i) == '/' || path.charAt(i) == '\\') {
+        if (end > i + 1) {
+          segments.add(path.substring(i + 1, end));
+        }
+        end = i;
+      }
+    }
+    return segments;
+  }
+
+  private static class Node {
+    private final Map<String, Node> children = new HashMap<>();
+    private final List<InputFile> files = new ArrayList<>(1);
+    @Nullable private InputFile file;
+  }
+}
@@ -19,13 +19,11 @@
 package org.sonar.plugins.groovy.jacoco;
 
 import java.io.File;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import javax.annotation.CheckForNull;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
 import org.jacoco.core.analysis.CoverageBuilder;
 import org.jacoco.core.analysis.ICounter;
@@ -35,21 +33,33 @@ import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.coverage.NewCoverage;
 import org.sonar.api.config.Configuration;
+import org.sonar.plugins.groovy.foundation.Groovy;
 import org.sonar.plugins.groovy.foundation.GroovyFileSystem;
+import org.sonar.plugins.groovy.foundation.GroovyTypeIndex;
 
 public class JaCoCoAnalyzer {
 
   private final List<File> binaryDirs;
   private final File baseDir;
   private final GroovyFileSystem groovyFileSystem;
-  private Map<String, File> classFilesCache;
-  private final Path report;
-
-  public JaCoCoAnalyzer(GroovyFileSystem groovyFileSystem, Configuration settings, Path report) {
+  private final GroovyTypeIndex typeIndex;
+  private final String[] fileSuffixes;
+  private final MergedExecutionData executionData;
+  private final int threads;
+
+  public JaCoCoAnalyzer(
+      GroovyFileSystem groovyFileSystem,
+      GroovyTypeIndex typeIndex,
+      Configuration settings,
+      MergedExecutionData executionData,
+      int threads) {
     this.groovyFileSystem = groovyFileSystem;
+    this.typeIndex = typeIndex;
+    this.fileSuffixes = new Groovy(settings).getFileSuffixes();
     baseDir = groovyFileSystem.baseDir();
     this.binaryDirs = getFiles(getBinaryDirectories(settings), baseDir);
-    this.report = report;
+    this.executionData = executionData;
+    this.threads = threads;
   }
 
   private List<String> getBinaryDirectories(Configuration settings) {
@@ -77,7 +87,13 @@ public class JaCoCoAnalyzer {
     String path = getFileRelativePath(coverage);
     InputFile sourceInputFileFromRelativePath =
         groovyFileSystem.sourceInputFileFromRelativePath(path);
-    if (sourceInputFileFromRelativePath == null && path.endsWith(".groovy")) {
+    if (sourceInputFileFromRelativePath == null && StringUtils.endsWithAny(path, fileSuffixes)) {
+      // the file may not be stored under its package: look for the class named after the file
+      InputFile declaringFile =
+          typeIndex.inputFile(FilenameUtils.removeExtension(path).replace('/', '.'));
+      if (declaringFile != null && declaringFile.type() == InputFile.Type.MAIN) {
+        return declaringFile;
+      }
       JaCoCoExtensions.logger().warn("File not found: " + path);
     }
     return sourceInputFileFromRelativePath;
@@ -97,36 +113,7 @@ public class JaCoCoAnalyzer {
           .warn("Project coverage is set to 0% since there is no directories with classes.");
       return;
     }
-    classFilesCache = new HashMap<>();
-    for (File classesDir : binaryDirs) {
-      populateClassFilesCache(classFilesCache, classesDir, "");
-    }
-
-    if (report == null) {
-      JaCoCoExtensions.logger().warn("No jacoco coverage execution file found.");
-      return;
-    }
-    Path jacocoExecutionData = baseDir.toPath().resolve(report).normalize();
-
-    readExecutionData(jacocoExecutionData, context);
-
-    classFilesCache.clear();
-  }
-
-  private static void populateClassFilesCache(
-      Map<String, File> classFilesCache, File dir, String path) {
-    File[] files = dir.listFiles();
-    if (files == null) {
-      return;
-    }
-    for (File file : files) {
-      if (file.isDirectory()) {
-        populateClassFilesCache(classFilesCache, file, path + file.getName() + "/");
-      } else if (file.getName().endsWith(".class")) {
-        String className = path + StringUtils.removeEnd(file.getName(), ".class");
-        classFilesCache.put(className, file);
-      }
-    }
+    readExecutionData(context);
   }
 
   private boolean atLeastOneBinaryDirectoryExists() {
@@ -141,15 +128,16 @@ public class JaCoCoAnalyzer {
     return false;
   }
 
-  public final void readExecutionData(Path jacocoExecutionData, SensorContext context) {
-    ExecutionDataVisitor executionDataVisitor = new ExecutionDataVisitor();
-
-    JaCoCoReportReader jacocoReportReader =
-        new JaCoCoReportReader(jacocoExecutionData.toFile())
-            .readJacocoReport(executionDataVisitor, executionDataVisitor);
-
+  private void readExecutionData(SensorContext context) {
+    JaCoCoClassFiles classFiles =
+        new JaCoCoClassFiles(executionData.getClassNames(), typeIndex.packages());
     CoverageBuilder coverageBuilder =
-        jacocoReportReader.analyzeFiles(executionDataVisitor.getMerged(), classFilesCache.values());
+        JaCoCoReportReader.analyzeFiles(
+            executionData,
+            classFiles.find(binaryDirs).values(),
+            classFiles.archives(binaryDirs),
+            classFiles::isAnalyzedEntry,
+            threads);
     int analyzedResources = 0;
     for (ISourceFileCoverage coverage : coverageBuilder.getSourceFiles()) {
       InputFile groovyFile = getInputFile(coverage);
@@ -0,0 +1,182 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.jacoco;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Finds the class files worth analyzing in the binary directories: the classes having execution
+ * data, and the classes of the packages of Groovy files, so that Groovy classes and scripts which
+ * were never executed still get zero coverage. Directories which cannot contain such classes are
+ * not walked. Binaries may also be archives, whose entries are filtered the same way.
+ */
+class JaCoCoClassFiles {
+
+  private static final String[] ARCHIVE_EXTENSIONS = {".jar", ".zip", ".war", ".ear"};
+  // where packaged applications keep their own classes
+  private static final String[] ARCHIVE_CLASS_DIRECTORIES = {
+    "BOOT-INF/classes/", "WEB-INF/classes/"
+  };
+
+  private final Set<String> executedClasses = new HashSet<>();
+  private final Set<String> packages = new HashSet<>();
+  // the packages above, and all their parent directories
+  private final Set<String> directories = new HashSet<>();
+
+  private int skippedClassFiles = 0;
+
+  /**
+   * @param executedClasses VM names of the classes found in the execution data
+   * @param groovyPackages packages of the Groovy files, with dots
+   */
+  JaCoCoClassFiles(Collection<String> executedClasses, Collection<String> groovyPackages) {
+    for (String executedClass : executedClasses) {
+      this.executedClasses.add(executedClass);
+      addDirectories(packageOf(executedClass));
+    }
+    for (String groovyPackage : groovyPackages) {
+      String packageDirectory = groovyPackage.replace('.', '/');
+      packages.add(packageDirectory);
+      addDirectories(packageDirectory);
+    }
+  }
+
+  private void addDirectories(String packageDirectory) {
+    String directory = packageDirectory;
+    while (directories.add(directory) && !directory.isEmpty()) {
+      directory = packageOf(directory);
+    }
+  }
+
+  private static String packageOf(String vmName) {
+    int lastSlash = vmName.lastIndexOf('/');
+    return lastSlash < 0 ? "" : vmName.substring(0, lastSlash);
+  }
+
+  /**
+   * Class files to analyze, by VM class name. When a class is found in several directories, the
+   * last one wins.
+   */
+  Map<String, File> find(Collection<File> binaryDirs) {
+    Map<String, File> classFiles = new LinkedHashMap<>();
+    for (File binaryDir : binaryDirs) {
+      if (binaryDir.isDirectory()) {
+        walk(binaryDir.toPath(), classFiles);
+      }
+    }
+    JaCoCoExtensions.logger()
+        .debug(
+            "{} class files to analyze, {} skipped in the packages walked",
+            classFiles.size(),
+            skippedClassFiles);
+    return classFiles;
+  }
+
+  private void walk(Path root, Map<String, File> classFiles) {
+    try {
+      Files.walkFileTree(
+          root,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+              return directories.contains(vmPath(root, dir))
+                  ? FileVisitResult.CONTINUE
+                  : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+              String fileName = file.getFileName().toString();
+              if (attrs.isRegularFile() && fileName.endsWith(".class")) {
+                String className = StringUtils.removeEnd(vmPath(root, file), ".class");
+                if (isAnalyzed(className)) {
+                  classFiles.put(className, file.toFile());
+                } else {
+                  skippedClassFiles++;
+                }
+              }
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+              JaCoCoExtensions.logger().warn("Unable to read " + file, e);
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to list class files of " + root, e);
+    }
+  }
+
+  /** Archives among the binaries, in their order. */
+  List<File> archives(Collection<File> binaries) {
+    List<File> archives = new ArrayList<>();
+    for (File binary : binaries) {
+      if (binary.isFile() && isArchive(binary.getName())) {
+        archives.add(binary);
+      }
+    }
+    return archives;
+  }
+
+  /** Whether the archive entry is a class file worth analyzing. */
+  boolean isAnalyzedEntry(String entryName) {
+    if (!entryName.endsWith(".class")) {
+      return false;
+    }
+    String className = StringUtils.removeEnd(entryName, ".class");
+    for (String directory : ARCHIVE_CLASS_DIRECTORIES) {
+      className = StringUtils.removeStart(className, directory);
+    }
+    return isAnalyzed(className);
+  }
+
+  static boolean isArchive(String fileName) {
+    return StringUtils.endsWithAny(fileName.toLowerCase(Locale.ENGLISH), ARCHIVE_EXTENSIONS);
+  }
+
+  /** Class files found in the walked directories but not worth analyzing. */
+  int skippedClassFiles() {
+    return skippedClassFiles;
+  }
+
+  private boolean isAnalyzed(String className) {
+    return executedClasses.contains(className) || packages.contains(packageOf(className));
+  }
+
+  private static String vmPath(Path root, Path path) {
+    return root.relativize(path).toString().replace(File.separatorChar, '/');
+  }
+}
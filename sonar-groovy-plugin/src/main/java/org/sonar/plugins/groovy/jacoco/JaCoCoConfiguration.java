@@ -35,10 +35,13 @@ public class JaCoCoConfiguration {
   static final String REPORT_PATH_DEFAULT_VALUE = "target/jacoco.exec";
   static final String IT_REPORT_PATH_PROPERTY = "sonar.groovy.jacoco.itReportPath";
   static final String IT_REPORT_PATH_DEFAULT_VALUE = "target/jacoco-it.exec";
+  static final String REPORT_PATHS_PROPERTY = "sonar.groovy.jacoco.reportPaths";
   static final String REPORT_MISSING_FORCE_ZERO = "sonar.groovy.jacoco.reportMissing.force.zero";
   static final String SONAR_GROOVY_BINARIES = "sonar.groovy.binaries";
   static final String SONAR_GROOVY_BINARIES_FALLBACK = "sonar.binaries";
   static final boolean REPORT_MISSING_FORCE_ZERO_DEFAULT_VALUE = false;
+  static final String JACOCO_THREADS = "sonar.groovy.jacoco.threads";
+  static final String WRITE_OVERALL_REPORT = "sonar.groovy.jacoco.writeOverallReport";
 
   private static final String SUBCATEGORY = "JaCoCo";
 
@@ -66,6 +69,18 @@ public class JaCoCoConfiguration {
     return settings.get(IT_REPORT_PATH_PROPERTY).orElseThrow(IllegalStateException::new);
   }
 
+  public boolean shouldWriteOverallReport() {
+    return settings.getBoolean(WRITE_OVERALL_REPORT).orElse(false);
+  }
+
+  public String[] getReportPaths() {
+    return settings.getStringArray(REPORT_PATHS_PROPERTY);
+  }
+
+  public int getThreads() {
+    return settings.getInt(JACOCO_THREADS).orElse(1);
+  }
+
   private boolean isCoverageToZeroWhenNoReport() {
     return settings.getBoolean(REPORT_MISSING_FORCE_ZERO).orElse(false);
   }
@@ -90,6 +105,17 @@ public class JaCoCoConfiguration {
             .subCategory(SUBCATEGORY)
             .onQualifiers(Qualifiers.PROJECT)
             .build(),
+        PropertyDefinition.builder(REPORT_PATHS_PROPERTY)
+            .name("JaCoCo Reports")
+            .description(
+                "Comma-separated list of JaCoCo report files containing coverage data, in addition to the UT and IT "
+                    + "reports. Each path may be absolute or relative to the project base directory, and may be a "
+                    + "glob pattern such as **/build/jacoco/*.exec.")
+            .category(Groovy.NAME)
+            .subCategory(SUBCATEGORY)
+            .onQualifiers(Qualifiers.PROJECT)
+            .multiValues(true)
+            .build(),
         PropertyDefinition.builder(JaCoCoConfiguration.REPORT_MISSING_FORCE_ZERO)
             .defaultValue(
                 Boolean.toString(JaCoCoConfiguration.REPORT_MISSING_FORCE_ZERO_DEFAULT_VALUE))
@@ -103,11 +129,34 @@ public class JaCoCoConfiguration {
         PropertyDefinition.builder(SONAR_GROOVY_BINARIES)
             .name("Binary directories")
             .description(
-                "Comma-separated list of optional directories that contain the compiled groovy sources.")
+                "Comma-separated list of optional directories, or JAR/ZIP archives, that contain the compiled groovy sources.")
             .category(Groovy.NAME)
             .subCategory(SUBCATEGORY)
             .onQualifiers(Qualifiers.PROJECT)
             .multiValues(true)
+            .build(),
+        PropertyDefinition.builder(JACOCO_THREADS)
+            .defaultValue("1")
+            .name("JaCoCo Threads")
+            .description(
+                "Number of threads used to read the JaCoCo reports and analyze the class files against their execution data. "
+                    + "Coverage is still saved by a single thread.")
+            .category(Groovy.NAME)
+            .subCategory(SUBCATEGORY)
+            .onQualifiers(Qualifiers.PROJECT)
+            .type(PropertyType.INTEGER)
+            .build(),
+        PropertyDefinition.builder(WRITE_OVERALL_REPORT)
+            .defaultValue("false")
+            .name("Write overall JaCoCo report")
+            .description(
+                "Also write the merge of the UT and IT JaCoCo reports, and of the reports matching "
+                    + REPORT_PATHS_PROPERTY
+                    + ", to jacoco-overall.exec in the working directory. The merge is analyzed in memory either way.")
+            .category(Groovy.NAME)
+            .subCategory(SUBCATEGORY)
+            .onQualifiers(Qualifiers.PROJECT)
+            .type(PropertyType.BOOLEAN)
             .build());
   }
 }
@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -25,11 +24,14 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import org.jacoco.core.data.ExecutionDataStore;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 import org.jacoco.core.data.ExecutionDataWriter;
-import org.jacoco.core.data.IExecutionDataVisitor;
 import org.jacoco.core.data.ISessionInfoVisitor;
 import org.jacoco.core.data.SessionInfoStore;
+import org.sonar.plugins.groovy.utils.ParallelExecution;
 
 /**
  * Utility class to merge JaCoCo reports.
@@ -38,37 +40,86 @@ import org.jacoco.core.data.SessionInfoStore;
  */
 public class JaCoCoReportMerger {
 
+  /**
+   * Several batches per thread, so that a few large reports do not leave the other threads idle.
+   */
+  private static final int BATCHES_PER_THREAD = 4;
+
   private JaCoCoReportMerger() {}
 
   /**
-   * Merge all reports in reportOverall.
+   * Merge all reports in memory.
+   *
+   * @param reports files to be merged, missing ones are ignored.
+   * @return the merged execution data.
+   */
+  public static MergedExecutionData mergeReports(File... reports) {
+    return mergeReports(null, reports);
+  }
+
+  /**
+   * Merge all reports in memory, and also write the merge to reportOverall when given.
    *
-   * @param reportOverall destination file of merge.
-   * @param reports files to be merged.
+   * @param reportOverall destination file of merge, or null to keep the merge in memory only.
+   * @param reports files to be merged, missing ones are ignored.
+   * @return the merged execution data.
    */
-  public static void mergeReports(Path reportOverall, File... reports) {
+  public static MergedExecutionData mergeReports(@Nullable Path reportOverall, File... reports) {
+    return mergeReports(reportOverall, Arrays.asList(reports), 1);
+  }
+
+  /**
+   * Same as {@link #mergeReports(Path, File...)}, reading the reports on {@code threads} threads.
+   * Each worker reads batches of reports into its own stores, which are then merged on the calling
+   * thread.
+   */
+  public static MergedExecutionData mergeReports(
+      @Nullable Path reportOverall, List<File> reports, int threads) {
+    List<File> existingReports = reports.stream().filter(File::isFile).collect(Collectors.toList());
+    boolean withSessions = reportOverall != null;
     SessionInfoStore infoStore = new SessionInfoStore();
-    ExecutionDataStore dataStore = new ExecutionDataStore();
-    loadSourceFiles(infoStore, dataStore, reports);
+    MergedExecutionData executionData = new MergedExecutionData();
+    ParallelExecution.forEachOrdered(
+        ParallelExecution.partition(existingReports, threads, BATCHES_PER_THREAD),
+        threads,
+        batch -> PartialMerge.read(batch, withSessions),
+        partial -> {
+          partial.infoStore.accept(infoStore);
+          executionData.merge(partial.executionData);
+        });
+    if (reportOverall != null) {
+      writeReport(reportOverall, infoStore, executionData);
+    }
+    return executionData;
+  }
 
+  private static void writeReport(
+      Path reportOverall, SessionInfoStore infoStore, MergedExecutionData executionData) {
     try (OutputStream fos = Files.newOutputStream(reportOverall);
         BufferedOutputStream outputStream = new BufferedOutputStream(fos)) {
-      Object visitor;
-      visitor = new ExecutionDataWriter(outputStream);
-      infoStore.accept((ISessionInfoVisitor) visitor);
-      dataStore.accept((IExecutionDataVisitor) visitor);
+      ExecutionDataWriter writer = new ExecutionDataWriter(outputStream);
+      infoStore.accept(writer);
+      executionData.accept(writer);
     } catch (IOException e) {
       throw new IllegalStateException(
           String.format("Unable to write overall coverage report %s", reportOverall), e);
     }
   }
 
-  private static void loadSourceFiles(
-      ISessionInfoVisitor infoStore, IExecutionDataVisitor dataStore, File... reports) {
-    for (File report : reports) {
-      if (report.isFile()) {
-        new JaCoCoReportReader(report).readJacocoReport(dataStore, infoStore);
+  /** Reports of one batch, merged by a worker thread. */
+  private static final class PartialMerge {
+
+    private final SessionInfoStore infoStore = new SessionInfoStore();
+    private final MergedExecutionData executionData = new MergedExecutionData();
+
+    static PartialMerge read(List<File> reports, boolean withSessions) {
+      PartialMerge partial = new PartialMerge();
+      // sessions only matter to the overall report
+      ISessionInfoVisitor sessionVisitor = withSessions ? partial.infoStore : partial.executionData;
+      for (File report : reports) {
+        new JaCoCoReportReader(report).readJacocoReport(partial.executionData, sessionVisitor);
       }
+      return partial;
     }
   }
 }
@@ -0,0 +1,150 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.jacoco;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Resolves JaCoCo report paths, which may be glob patterns such as {@code build/jacoco/*.exec}.
+ * Only the directory before the first wildcard is walked.
+ */
+final class JaCoCoReportPaths {
+
+  private static final String GLOB_CHARACTERS = "*?[{";
+
+  private JaCoCoReportPaths() {}
+
+  /**
+   * Existing report files matching {@code patterns}, relative to {@code baseDir} unless absolute.
+   * Each file is listed once, in the order of the patterns.
+   */
+  static List<File> resolve(File baseDir, String... patterns) {
+    Set<File> reports = new LinkedHashSet<>();
+    for (String pattern : patterns) {
+      if (StringUtils.isBlank(pattern)) {
+        continue;
+      }
+      String normalized = pattern.trim().replace('\\', '/');
+      if (StringUtils.containsNone(normalized, GLOB_CHARACTERS)) {
+        File report = resolve(baseDir.toPath(), normalized).toFile();
+        if (report.isFile()) {
+          reports.add(report);
+        } else {
+          JaCoCoExtensions.logger().debug("JaCoCo report not found: {}", report);
+        }
+      } else {
+        reports.addAll(match(baseDir.toPath(), normalized));
+      }
+    }
+    return new ArrayList<>(reports);
+  }
+
+  /**
+   * The reports without those already listed under another path, such as a pattern also matching
+   * the report of {@code sonar.groovy.jacoco.reportPath}. Paths are compared once canonicalized.
+   */
+  static List<File> distinct(List<File> reports) {
+    Map<File, File> reportsByCanonicalFile = new LinkedHashMap<>();
+    for (File report : reports) {
+      reportsByCanonicalFile.putIfAbsent(canonicalFile(report), report);
+    }
+    return new ArrayList<>(reportsByCanonicalFile.values());
+  }
+
+  private static File canonicalFile(File file) {
+    try {
+      return file.getCanonicalFile();
+    } catch (IOException e) {
+      return file.toPath().toAbsolutePath().normalize().toFile();
+    }
+  }
+
+  private static List<File> match(Path baseDir, String pattern) {
+    int wildcard = StringUtils.indexOfAny(pattern, GLOB_CHARACTERS);
+    int lastSlash = pattern.lastIndexOf('/', wildcard);
+    Path root = resolve(baseDir, lastSlash < 0 ? "" : pattern.substring(0, lastSlash + 1));
+    List<PathMatcher> matchers = new ArrayList<>();
+    for (String glob : withOptionalDirectories(pattern.substring(lastSlash + 1))) {
+      matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+    }
+    List<File> reports = new ArrayList<>();
+    if (!Files.isDirectory(root)) {
+      JaCoCoExtensions.logger().debug("No JaCoCo report matching {}", pattern);
+      return reports;
+    }
+    try {
+      Files.walkFileTree(
+          root,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+              Path relativePath = root.relativize(file);
+              if (attrs.isRegularFile()
+                  && matchers.stream().anyMatch(m -> m.matches(relativePath))) {
+                reports.add(file.toFile());
+              }
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to list JaCoCo reports matching " + pattern, e);
+    }
+    reports.sort(null);
+    return reports;
+  }
+
+  /**
+   * The glob, and its variants without some of its {@code **}{@code /} segments: in Java globs they
+   * match at least one directory, while in Ant or Gradle patterns they also match none.
+   */
+  private static Set<String> withOptionalDirectories(String glob) {
+    Set<String> globs = new LinkedHashSet<>();
+    globs.add(glob);
+    for (int i = glob.indexOf("**/"); i >= 0; i = glob.indexOf("**/", i + 1)) {
+      if (i == 0 || glob.charAt(i - 1) == '/') {
+        globs.addAll(withOptionalDirectories(glob.substring(0, i) + glob.substring(i + 3)));
+      }
+    }
+    return globs;
+  }
+
+  private static Path resolve(Path baseDir, String path) {
+    return baseDir.resolve(path).normalize();
+  }
+}
@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -25,15 +24,26 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import javax.annotation.Nullable;
+import org.apache.commons.io.IOUtils;
 import org.jacoco.core.analysis.Analyzer;
 import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.ICoverageVisitor;
 import org.jacoco.core.data.ExecutionDataReader;
 import org.jacoco.core.data.ExecutionDataStore;
 import org.jacoco.core.data.ExecutionDataWriter;
 import org.jacoco.core.data.IExecutionDataVisitor;
 import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.internal.data.CRC64;
+import org.sonar.plugins.groovy.utils.ParallelExecution;
 
 public class JaCoCoReportReader {
 
@@ -41,6 +51,11 @@ public class JaCoCoReportReader {
   static final String INCOMPATIBLE_JACOCO_ERROR =
       "You are using an incompatible JaCoCo binary format version, please consider upgrading to a supported JaCoCo version (0.8.x).";
 
+  /**
+   * Several batches per thread, so that a few large classes do not leave the other threads idle.
+   */
+  private static final int BATCHES_PER_THREAD = 4;
+
   @Nullable private final File jacocoExecutionData;
 
   public JaCoCoReportReader(@Nullable File jacocoExecutionData) {
@@ -87,8 +102,7 @@ public class JaCoCoReportReader {
         throw new IllegalStateException();
       }
       if (dis.readChar() != ExecutionDataWriter.FORMAT_VERSION) {
-        throw new IllegalArgumentException(
-            INCOMPATIBLE_JACOCO_ERROR);
+        throw new IllegalArgumentException(INCOMPATIBLE_JACOCO_ERROR);
       }
     } catch (IOException | IllegalStateException e) {
       throw new IllegalArgumentException(
@@ -100,24 +114,150 @@ public class JaCoCoReportReader {
   }
 
   /** Caller must guarantee that {@code classFiles} are actually class file. */
-  public CoverageBuilder analyzeFiles(
-      ExecutionDataStore executionDataStore, Collection<File> classFiles) {
+  public static CoverageBuilder analyzeFiles(
+      MergedExecutionData executionData, Collection<File> classFiles) {
+    return analyzeFiles(executionData, classFiles, 1);
+  }
+
+  /**
+   * Same as {@link #analyzeFiles(MergedExecutionData, Collection)}, on {@code threads} threads.
+   * Each worker analyzes batches of class files with its own {@link CoverageBuilder}, reading the
+   * shared {@code executionData} only. The classes found are then added to a single builder, which
+   * computes the coverage of their source files.
+   */
+  public static CoverageBuilder analyzeFiles(
+      MergedExecutionData executionData, Collection<File> classFiles, int threads) {
+    if (threads <= 1 || classFiles.size() <= 1) {
+      return analyzeBatch(executionData, classFiles);
+    }
+    CoverageBuilder coverageBuilder = new CoverageBuilder();
+    ParallelExecution.forEachOrdered(
+        ParallelExecution.partition(new ArrayList<>(classFiles), threads, BATCHES_PER_THREAD),
+        threads,
+        batch -> analyzeBatch(executionData, batch).getClasses(),
+        classes -> classes.forEach(coverageBuilder::visitCoverage));
+    return coverageBuilder;
+  }
+
+  /**
+   * Same as {@link #analyzeFiles(MergedExecutionData, Collection, int)}, also analyzing the class
+   * entries of {@code archives}, and of the archives nested in them, accepted by {@code
+   * entryFilter}. Entries are read from the archives without being extracted. Each archive is
+   * analyzed by a single worker, and a class already found in {@code classFiles}, in a previous
+   * archive or earlier in the same archive is ignored.
+   */
+  public static CoverageBuilder analyzeFiles(
+      MergedExecutionData executionData,
+      Collection<File> classFiles,
+      Collection<File> archives,
+      Predicate<String> entryFilter,
+      int threads) {
+    CoverageBuilder coverageBuilder = analyzeFiles(executionData, classFiles, threads);
+    Set<String> classNames = new HashSet<>();
+    coverageBuilder.getClasses().forEach(coverage -> classNames.add(coverage.getName()));
+    ParallelExecution.forEachOrdered(
+        archives,
+        threads,
+        archive -> analyzeArchive(executionData, archive, entryFilter).getClasses(),
+        classes ->
+            classes.stream()
+                .filter(coverage -> classNames.add(coverage.getName()))
+                .forEach(coverageBuilder::visitCoverage));
+    return coverageBuilder;
+  }
+
+  private static CoverageBuilder analyzeArchive(
+      MergedExecutionData executionData, File archive, Predicate<String> entryFilter) {
+    CoverageBuilder coverageBuilder = new CoverageBuilder();
+    // nested archives may hold another build of a class, which the builder would not accept
+    Set<String> classNames = new HashSet<>();
+    ICoverageVisitor firstOfEachClass =
+        coverage -> {
+          if (classNames.add(coverage.getName())) {
+            coverageBuilder.visitCoverage(coverage);
+          }
+        };
+    try (InputStream inputStream = new BufferedInputStream(new FileInputStream(archive))) {
+      analyzeArchive(
+          executionData,
+          firstOfEachClass,
+          new ZipInputStream(inputStream),
+          archive.getPath(),
+          entryFilter);
+    } catch (IOException e) {
+      JaCoCoExtensions.logger()
+          .warn("Exception during analysis of archive " + archive.getAbsolutePath(), e);
+    }
+    return coverageBuilder;
+  }
+
+  /** Does not close {@code zip}, which may be an entry of an enclosing archive. */
+  private static void analyzeArchive(
+      MergedExecutionData executionData,
+      ICoverageVisitor coverageVisitor,
+      ZipInputStream zip,
+      String location,
+      Predicate<String> entryFilter)
+      throws IOException {
+    ZipEntry entry;
+    while ((entry = zip.getNextEntry()) != null) {
+      String entryLocation = location + "@" + entry.getName();
+      if (entryFilter.test(entry.getName())) {
+        analyzeClassEntry(executionData, coverageVisitor, zip, entryLocation);
+      } else if (JaCoCoClassFiles.isArchive(entry.getName())) {
+        analyzeArchive(
+            executionData, coverageVisitor, new ZipInputStream(zip), entryLocation, entryFilter);
+      }
+    }
+  }
+
+  private static void analyzeClassEntry(
+      MergedExecutionData executionData,
+      ICoverageVisitor coverageVisitor,
+      InputStream entry,
+      String location) {
+    try {
+      analyzeClass(executionData, coverageVisitor, IOUtils.toByteArray(entry), location);
+    } catch (IOException e) {
+      // the location of the entry is part of the message
+      JaCoCoExtensions.logger().warn("Exception during analysis of archive entry", e);
+    }
+  }
+
+  private static CoverageBuilder analyzeBatch(
+      MergedExecutionData executionData, Collection<File> classFiles) {
     CoverageBuilder coverageBuilder = new CoverageBuilder();
-    Analyzer analyzer = new Analyzer(executionDataStore, coverageBuilder);
     for (File classFile : classFiles) {
-      analyzeClassFile(analyzer, classFile);
+      analyzeClassFile(executionData, coverageBuilder, classFile);
     }
     return coverageBuilder;
   }
 
   /** Caller must guarantee that {@code classFile} is actually class file. */
-  private static void analyzeClassFile(Analyzer analyzer, File classFile) {
-    try (InputStream inputStream = new FileInputStream(classFile)) {
-      analyzer.analyzeClass(inputStream, classFile.getPath());
+  private static void analyzeClassFile(
+      MergedExecutionData executionData, CoverageBuilder coverageBuilder, File classFile) {
+    try {
+      byte[] classBytes = Files.readAllBytes(classFile.toPath());
+      analyzeClass(executionData, coverageBuilder, classBytes, classFile.getPath());
     } catch (IOException e) {
       // (Godin): in fact JaCoCo includes name into exception
       JaCoCoExtensions.logger()
           .warn("Exception during analysis of file " + classFile.getAbsolutePath(), e);
     }
   }
+
+  /**
+   * Analyzes a class against a store holding its own execution data only, so that the probes of the
+   * other classes are not expanded. The class is identified the same way as by the {@link
+   * Analyzer}.
+   */
+  private static void analyzeClass(
+      MergedExecutionData executionData,
+      ICoverageVisitor coverageVisitor,
+      byte[] classBytes,
+      String location)
+      throws IOException {
+    ExecutionDataStore store = executionData.storeOf(CRC64.classId(classBytes));
+    new Analyzer(store, coverageVisitor).analyzeClass(classBytes, location);
+  }
 }
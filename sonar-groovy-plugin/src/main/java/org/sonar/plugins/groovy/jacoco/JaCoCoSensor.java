@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -22,7 +21,9 @@ package org.sonar.plugins.groovy.jacoco;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
@@ -33,6 +34,7 @@ import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.plugins.groovy.foundation.Groovy;
 import org.sonar.plugins.groovy.foundation.GroovyFileSystem;
+import org.sonar.plugins.groovy.foundation.GroovyTypeIndex;
 
 public class JaCoCoSensor implements Sensor {
 
@@ -42,6 +44,7 @@ public class JaCoCoSensor implements Sensor {
 
   private final JaCoCoConfiguration configuration;
   private final GroovyFileSystem fileSystem;
+  private final GroovyTypeIndex typeIndex;
   private final PathResolver pathResolver;
   private final Configuration settings;
   private final AnalysisWarnings analysisWarnings;
@@ -53,11 +56,13 @@ public class JaCoCoSensor implements Sensor {
   public JaCoCoSensor(
       JaCoCoConfiguration configuration,
       GroovyFileSystem fileSystem,
+      GroovyTypeIndex typeIndex,
       PathResolver pathResolver,
       Configuration settings,
       AnalysisWarnings analysisWarnings) {
     this.configuration = configuration;
     this.fileSystem = fileSystem;
+    this.typeIndex = typeIndex;
     this.pathResolver = pathResolver;
     this.settings = settings;
     this.analysisWarnings = analysisWarnings;
@@ -88,10 +93,18 @@ public class JaCoCoSensor implements Sensor {
       return;
     }
 
-    if (shouldExecuteOnProject(reportUTs.isFile(), reportITs.isFile())) {
-      Path reportOverall = context.fileSystem().workDir().toPath().resolve(JACOCO_OVERALL);
-      JaCoCoReportMerger.mergeReports(reportOverall, reportUTs, reportITs);
-      new JaCoCoAnalyzer(fileSystem, settings, reportOverall).analyse(context);
+    List<File> reports = new ArrayList<>(Arrays.asList(reportUTs, reportITs));
+    reports.addAll(JaCoCoReportPaths.resolve(baseDir, configuration.getReportPaths()));
+    reports = JaCoCoReportPaths.distinct(reports);
+    if (shouldExecuteOnProject(reports.stream().anyMatch(File::isFile))) {
+      Path reportOverall =
+          configuration.shouldWriteOverallReport()
+              ? context.fileSystem().workDir().toPath().resolve(JACOCO_OVERALL)
+              : null;
+      MergedExecutionData executionData =
+          JaCoCoReportMerger.mergeReports(reportOverall, reports, configuration.getThreads());
+      new JaCoCoAnalyzer(fileSystem, typeIndex, settings, executionData, configuration.getThreads())
+          .analyse(context);
     }
   }
 
@@ -127,10 +140,9 @@ public class JaCoCoSensor implements Sensor {
   }
 
   // VisibleForTesting
-  boolean shouldExecuteOnProject(boolean hasUT, boolean hasIT) {
-    boolean foundOneReport = hasUT || hasIT;
-    boolean shouldExecute = configuration.shouldExecuteOnProject(foundOneReport);
-    if (!foundOneReport && shouldExecute) {
+  boolean shouldExecuteOnProject(boolean reportFound) {
+    boolean shouldExecute = configuration.shouldExecuteOnProject(reportFound);
+    if (!reportFound && shouldExecute) {
       JaCoCoExtensions.logger().info("JaCoCoSensor: No JaCoCo report found.");
     }
     return shouldExecute;
@@ -0,0 +1,160 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.jacoco;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.data.SessionInfo;
+
+/**
+ * JaCoCo execution data merged across sessions and reports.
+ *
+ * <p>Sessions are not kept and the probes of each class are stored as a bitset, using one bit per
+ * probe instead of a {@code boolean}. They are only expanded to an {@link ExecutionData}, one class
+ * at a time, when that class is analyzed or written.
+ */
+public class MergedExecutionData implements ISessionInfoVisitor, IExecutionDataVisitor {
+
+  private final Map<Long, MergedProbes> mergedProbes = new HashMap<>();
+
+  @Override
+  public void visitSessionInfo(SessionInfo info) {
+    // sessions are not kept
+  }
+
+  @Override
+  public void visitClassExecution(ExecutionData data) {
+    MergedProbes probes = mergedProbes.get(data.getId());
+    if (probes == null) {
+      mergedProbes.put(data.getId(), new MergedProbes(data));
+    } else {
+      probes.merge(data);
+    }
+  }
+
+  /** Adds the execution data collected by {@code other}, which must not be used afterwards. */
+  public void merge(MergedExecutionData other) {
+    for (Map.Entry<Long, MergedProbes> entry : other.mergedProbes.entrySet()) {
+      MergedProbes probes = mergedProbes.get(entry.getKey());
+      if (probes == null) {
+        mergedProbes.put(entry.getKey(), entry.getValue());
+      } else {
+        probes.merge(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  public boolean isEmpty() {
+    return mergedProbes.isEmpty();
+  }
+
+  /** VM names of the executed classes. */
+  public Collection<String> getClassNames() {
+    List<String> names = new ArrayList<>(mergedProbes.size());
+    mergedProbes.values().forEach(probes -> names.add(probes.name));
+    return names;
+  }
+
+  /** Execution data of the class with the given id, built on each call. */
+  @CheckForNull
+  public ExecutionData get(long classId) {
+    MergedProbes probes = mergedProbes.get(classId);
+    return probes == null ? null : new ExecutionData(classId, probes.name, probes.toArray());
+  }
+
+  /**
+   * Store holding the execution data of the given class only, if any, to analyze that class with a
+   * JaCoCo {@link org.jacoco.core.analysis.Analyzer}.
+   */
+  public ExecutionDataStore storeOf(long classId) {
+    ExecutionDataStore store = new ExecutionDataStore();
+    ExecutionData data = get(classId);
+    if (data != null) {
+      store.put(data);
+    }
+    return store;
+  }
+
+  /** Visits the execution data of every class, expanded one class at a time. */
+  public void accept(IExecutionDataVisitor visitor) {
+    for (Long classId : mergedProbes.keySet()) {
+      visitor.visitClassExecution(get(classId));
+    }
+  }
+
+  /** Probes of a class merged across sessions, one bit per probe. */
+  private static final class MergedProbes {
+
+    private final String name;
+    private final int probeCount;
+    private final long[] bits;
+
+    MergedProbes(ExecutionData data) {
+      this.name = data.getName();
+      this.probeCount = data.getProbes().length;
+      this.bits = new long[(probeCount + 63) >>> 6];
+      merge(data);
+    }
+
+    void merge(ExecutionData data) {
+      boolean[] probes = data.getProbes();
+      assertCompatible(data.getId(), data.getName(), probes.length);
+      for (int i = 0; i < probes.length; i++) {
+        if (probes[i]) {
+          bits[i >>> 6] |= 1L << i;
+        }
+      }
+    }
+
+    void merge(long id, MergedProbes other) {
+      assertCompatible(id, other.name, other.probeCount);
+      for (int i = 0; i < bits.length; i++) {
+        bits[i] |= other.bits[i];
+      }
+    }
+
+    // same checks as ExecutionData.assertCompatibility
+    private void assertCompatible(long id, String otherName, int otherProbeCount) {
+      if (!name.equals(otherName)) {
+        throw new IllegalStateException(
+            String.format("Different class names %s and %s for id %016x.", name, otherName, id));
+      }
+      if (otherProbeCount != probeCount) {
+        throw new IllegalStateException(
+            String.format("Incompatible execution data for class %s with id %016x.", name, id));
+      }
+    }
+
+    boolean[] toArray() {
+      boolean[] probes = new boolean[probeCount];
+      for (int i = 0; i < probeCount; i++) {
+        probes[i] = (bits[i >>> 6] & (1L << i)) != 0;
+      }
+      return probes;
+    }
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import org.codehaus.groovy.ast.CodeVisitorSupport;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.expr.BinaryExpression;
+import org.codehaus.groovy.ast.expr.ClosureExpression;
+import org.codehaus.groovy.ast.expr.ElvisOperatorExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.MethodCallExpression;
+import org.codehaus.groovy.ast.expr.PropertyExpression;
+import org.codehaus.groovy.ast.expr.TernaryExpression;
+import org.codehaus.groovy.ast.stmt.BreakStatement;
+import org.codehaus.groovy.ast.stmt.CaseStatement;
+import org.codehaus.groovy.ast.stmt.CatchStatement;
+import org.codehaus.groovy.ast.stmt.ContinueStatement;
+import org.codehaus.groovy.ast.stmt.DoWhileStatement;
+import org.codehaus.groovy.ast.stmt.EmptyStatement;
+import org.codehaus.groovy.ast.stmt.ForStatement;
+import org.codehaus.groovy.ast.stmt.IfStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
+import org.codehaus.groovy.ast.stmt.SwitchStatement;
+import org.codehaus.groovy.ast.stmt.WhileStatement;
+import org.codehaus.groovy.syntax.Types;
+
+/**
+ * Computes the cyclomatic and the cognitive complexity of a single function in one pass over its
+ * code.
+ *
+ * <p>Cyclomatic complexity follows GMetrics: one plus one for each {@code if}, loop, {@code case},
+ * {@code catch}, ternary or Elvis operator, boolean operator and safe navigation. Cognitive
+ * complexity follows the SonarSource specification: structures get an increment that grows with
+ * their nesting level, {@code else}/{@code else if}, sequences of like boolean operators and
+ * labelled jumps get a flat increment, and closures only increase the nesting level.
+ */
+class ComplexityVisitor extends CodeVisitorSupport {
+
+  private final Set<BinaryExpression> countedLogicalExpressions =
+      Collections.newSetFromMap(new IdentityHashMap<>());
+
+  private int cyclomatic = 1;
+  private int cognitive = 0;
+  private int nesting = 0;
+
+  static ComplexityVisitor visit(MethodNode methodNode) {
+    ComplexityVisitor visitor = new ComplexityVisitor();
+    Statement code = methodNode.getCode();
+    if (code != null) {
+      code.visit(visitor);
+    }
+    return visitor;
+  }
+
+  static ComplexityVisitor visit(ClosureExpression closure) {
+    ComplexityVisitor visitor = new ComplexityVisitor();
+    closure.getCode().visit(visitor);
+    return visitor;
+  }
+
+  int cyclomaticComplexity() {
+    return cyclomatic;
+  }
+
+  int cognitiveComplexity() {
+    return cognitive;
+  }
+
+  @Override
+  public void visitIfElse(IfStatement ifElse) {
+    visitIf(ifElse, false);
+  }
+
+  private void visitIf(IfStatement ifElse, boolean isElseIf) {
+    cyclomatic++;
+    cognitive += isElseIf ? 1 : 1 + nesting;
+    ifElse.getBooleanExpression().visit(this);
+    visitNested(ifElse.getIfBlock());
+
+    Statement elseBlock = ifElse.getElseBlock();
+    if (elseBlock instanceof IfStatement) {
+      visitIf((IfStatement) elseBlock, true);
+    } else if (!(elseBlock instanceof EmptyStatement)) {
+      cognitive++;
+      visitNested(elseBlock);
+    }
+  }
+
+  @Override
+  public void visitWhileLoop(WhileStatement loop) {
+    cyclomatic++;
+    cognitive += 1 + nesting;
+    loop.getBooleanExpression().visit(this);
+    visitNested(loop.getLoopBlock());
+  }
+
+  @Override
+  public void visitDoWhileLoop(DoWhileStatement loop) {
+    cyclomatic++;
+    cognitive += 1 + nesting;
+    visitNested(loop.getLoopBlock());
+    loop.getBooleanExpression().visit(this);
+  }
+
+  @Override
+  public void visitForLoop(ForStatement forLoop) {
+    cyclomatic++;
+    cognitive += 1 + nesting;
+    forLoop.getCollectionExpression().visit(this);
+    visitNested(forLoop.getLoopBlock());
+  }
+
+  @Override
+  public void visitSwitch(SwitchStatement statement) {
+    cyclomatic += statement.getCaseStatements().size();
+    cognitive += 1 + nesting;
+    statement.getExpression().visit(this);
+    nesting++;
+    for (CaseStatement caseStatement : statement.getCaseStatements()) {
+      caseStatement.visit(this);
+    }
+    statement.getDefaultStatement().visit(this);
+    nesting--;
+  }
+
+  @Override
+  public void visitCatchStatement(CatchStatement statement) {
+    cyclomatic++;
+    cognitive += 1 + nesting;
+    visitNested(statement.getCode());
+  }
+
+  @Override
+  public void visitBreakStatement(BreakStatement statement) {
+    if (statement.getLabel() != null) {
+      cognitive++;
+    }
+    super.visitBreakStatement(statement);
+  }
+
+  @Override
+  public void visitContinueStatement(ContinueStatement statement) {
+    if (statement.getLabel() != null) {
+      cognitive++;
+    }
+    super.visitContinueStatement(statement);
+  }
+
+  @Override
+  public void visitTernaryExpression(TernaryExpression expression) {
+    cyclomatic++;
+    cognitive += 1 + nesting;
+    expression.getBooleanExpression().visit(this);
+    nesting++;
+    expression.getTrueExpression().visit(this);
+    expression.getFalseExpression().visit(this);
+    nesting--;
+  }
+
+  /** The Elvis operator is a null-coalescing shorthand: no cognitive increment. */
+  @Override
+  public void visitShortTernaryExpression(ElvisOperatorExpression expression) {
+    cyclomatic++;
+    expression.getBooleanExpression().visit(this);
+    expression.getTrueExpression().visit(this);
+    expression.getFalseExpression().visit(this);
+  }
+
+  @Override
+  public void visitBinaryExpression(BinaryExpression expression) {
+    if (isLogical(expression)) {
+      cyclomatic++;
+      if (!countedLogicalExpressions.contains(expression)) {
+        countLogicalOperatorSequence(expression);
+      }
+    }
+    super.visitBinaryExpression(expression);
+  }
+
+  @Override
+  public void visitMethodCallExpression(MethodCallExpression call) {
+    if (call.isSafe()) {
+      cyclomatic++;
+    }
+    super.visitMethodCallExpression(call);
+  }
+
+  @Override
+  public void visitPropertyExpression(PropertyExpression expression) {
+    if (expression.isSafe()) {
+      cyclomatic++;
+    }
+    super.visitPropertyExpression(expression);
+  }
+
+  @Override
+  public void visitClosureExpression(ClosureExpression expression) {
+    nesting++;
+    super.visitClosureExpression(expression);
+    nesting--;
+  }
+
+  private void visitNested(Statement statement) {
+    nesting++;
+    statement.visit(this);
+    nesting--;
+  }
+
+  /** {@code a && b && c || d} counts two: one per change of operator in the sequence. */
+  private void countLogicalOperatorSequence(BinaryExpression expression) {
+    List<Integer> operators = new ArrayList<>();
+    flattenLogicalOperators(expression, operators);
+    int previous = Types.UNKNOWN;
+    for (int operator : operators) {
+      if (operator != previous) {
+        cognitive++;
+      }
+      previous = operator;
+    }
+  }
+
+  private void flattenLogicalOperators(Expression expression, List<Integer> operators) {
+    if (isLogical(expression)) {
+      BinaryExpression binary = (BinaryExpression) expression;
+      countedLogicalExpressions.add(binary);
+      flattenLogicalOperators(binary.getLeftExpression(), operators);
+      operators.add(binary.getOperation().getType());
+      flattenLogicalOperators(binary.getRightExpression(), operators);
+    }
+  }
+
+  private static boolean isLogical(Expression expression) {
+    if (!(expression instanceof BinaryExpression)) {
+      return false;
+    }
+    int type = ((BinaryExpression) expression).getOperation().getType();
+    return type == Types.LOGICAL_AND || type == Types.LOGICAL_OR;
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.FieldNode;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.expr.ClosureExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+
+/**
+ * Class, function and complexity counts of a single Groovy file, computed directly from its AST.
+ *
+ * <p>Functions are the methods and constructors of each non-interface class, plus the fields
+ * initialized with a closure. Abstract methods and compiler-generated methods (other than the
+ * {@code run} method of scripts) are ignored, as GMetrics did.
+ */
+public final class GroovyMetrics {
+
+  private static final String SCRIPT_RUN_METHOD = "run";
+
+  private int classes = 0;
+  private int functions = 0;
+  private int complexity = 0;
+  private int cognitiveComplexity = 0;
+
+  private GroovyMetrics() {}
+
+  public static GroovyMetrics compute(ModuleNode ast) {
+    GroovyMetrics metrics = new GroovyMetrics();
+    for (ClassNode classNode : ast.getClasses()) {
+      metrics.visitClass(classNode);
+    }
+    return metrics;
+  }
+
+  private void visitClass(ClassNode classNode) {
+    classes++;
+    if (classNode.isInterface()) {
+      return;
+    }
+
+    List<MethodNode> methods = new ArrayList<>(classNode.getMethods());
+    methods.addAll(classNode.getDeclaredConstructors());
+    for (MethodNode method : methods) {
+      if (!method.isAbstract() && !isGenerated(method)) {
+        functions++;
+        add(ComplexityVisitor.visit(method));
+      }
+    }
+
+    for (FieldNode field : classNode.getFields()) {
+      Expression initialValue = field.getInitialExpression();
+      if (initialValue instanceof ClosureExpression) {
+        functions++;
+        add(ComplexityVisitor.visit((ClosureExpression) initialValue));
+      }
+    }
+  }
+
+  private static boolean isGenerated(MethodNode method) {
+    return method.getLineNumber() < 0 && !SCRIPT_RUN_METHOD.equals(method.getName());
+  }
+
+  private void add(ComplexityVisitor visitor) {
+    complexity += visitor.cyclomaticComplexity();
+    cognitiveComplexity += visitor.cognitiveComplexity();
+  }
+
+  public int classes() {
+    return classes;
+  }
+
+  public int functions() {
+    return functions;
+  }
+
+  /** Cyclomatic complexity, summed over all functions. */
+  public int complexity() {
+    return complexity;
+  }
+
+  /** Cognitive complexity, summed over all functions. */
+  public int cognitiveComplexity() {
+    return cognitiveComplexity;
+  }
+}
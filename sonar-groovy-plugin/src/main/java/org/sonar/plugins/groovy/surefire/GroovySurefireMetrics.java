@@ -0,0 +1,72 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.surefire;
+
+import java.util.Arrays;
+import java.util.List;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.Metrics;
+
+/** Test duration statistics computed from the Surefire reports, saved on test files. */
+public class GroovySurefireMetrics implements Metrics {
+
+  public static final Metric<Long> TEST_DURATION_P50 =
+      new Metric.Builder(
+              "groovy_test_duration_p50", "Median Test Duration", Metric.ValueType.MILLISEC)
+          .setDescription("Median duration of the executed tests of a test file")
+          .setDirection(Metric.DIRECTION_WORST)
+          .setQualitative(false)
+          .setDomain(CoreMetrics.DOMAIN_COVERAGE)
+          .create();
+
+  public static final Metric<Long> TEST_DURATION_P95 =
+      new Metric.Builder(
+              "groovy_test_duration_p95",
+              "95th Percentile Test Duration",
+              Metric.ValueType.MILLISEC)
+          .setDescription("95th percentile of the durations of the executed tests of a test file")
+          .setDirection(Metric.DIRECTION_WORST)
+          .setQualitative(false)
+          .setDomain(CoreMetrics.DOMAIN_COVERAGE)
+          .create();
+
+  public static final Metric<Long> TEST_DURATION_MAX =
+      new Metric.Builder(
+              "groovy_test_duration_max", "Longest Test Duration", Metric.ValueType.MILLISEC)
+          .setDescription("Duration of the longest executed test of a test file")
+          .setDirection(Metric.DIRECTION_WORST)
+          .setQualitative(false)
+          .setDomain(CoreMetrics.DOMAIN_COVERAGE)
+          .create();
+
+  public static final Metric<Integer> SLOW_TESTS =
+      new Metric.Builder("groovy_slow_tests", "Slow Tests", Metric.ValueType.INT)
+          .setDescription("Number of executed tests lasting longer than the slow test threshold")
+          .setDirection(Metric.DIRECTION_WORST)
+          .setQualitative(false)
+          .setDomain(CoreMetrics.DOMAIN_COVERAGE)
+          .setBestValue(0.0)
+          .create();
+
+  @Override
+  public List<Metric> getMetrics() {
+    return Arrays.asList(TEST_DURATION_P50, TEST_DURATION_P95, TEST_DURATION_MAX, SLOW_TESTS);
+  }
+}
@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -20,47 +19,74 @@
 package org.sonar.plugins.groovy.surefire;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
 import javax.xml.stream.XMLStreamException;
 import org.apache.commons.lang.StringUtils;
 import org.sonar.api.batch.ScannerSide;
-import org.sonar.api.batch.fs.FilePredicate;
-import org.sonar.api.batch.fs.FilePredicates;
-import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.InputFile.Type;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
+import org.sonar.api.utils.text.JsonWriter;
 import org.sonar.plugins.groovy.foundation.Groovy;
+import org.sonar.plugins.groovy.foundation.GroovyFileSystem;
+import org.sonar.plugins.groovy.foundation.GroovyTypeIndex;
+import org.sonar.plugins.groovy.surefire.data.DurationHistogram;
+import org.sonar.plugins.groovy.surefire.data.SlowestTests;
+import org.sonar.plugins.groovy.surefire.data.SlowestTests.SlowTest;
 import org.sonar.plugins.groovy.surefire.data.SurefireStaxHandler;
 import org.sonar.plugins.groovy.surefire.data.UnitTestClassReport;
 import org.sonar.plugins.groovy.surefire.data.UnitTestIndex;
+import org.sonar.plugins.groovy.utils.ParallelExecution;
 import org.sonar.plugins.groovy.utils.StaxParser;
 
 @ScannerSide
 public class GroovySurefireParser {
 
   private static final Logger LOGGER = Loggers.get(GroovySurefireParser.class);
+  /**
+   * Several batches per thread, so that a few large reports do not leave the other threads idle.
+   */
+  private static final int BATCHES_PER_THREAD = 4;
+
+  static final String DURATION_REPORT_FILE_NAME = "surefire-test-durations.json";
+  static final long DEFAULT_SLOW_TEST_THRESHOLD = 1000L;
+  static final int DEFAULT_SLOWEST_TESTS = 10;
+
   private final Groovy groovy;
-  private final FileSystem fs;
+  private final GroovyFileSystem groovyFileSystem;
+  private final GroovyTypeIndex typeIndex;
 
-  public GroovySurefireParser(Groovy groovy, FileSystem fs) {
+  public GroovySurefireParser(
+      Groovy groovy, GroovyFileSystem groovyFileSystem, GroovyTypeIndex typeIndex) {
     this.groovy = groovy;
-    this.fs = fs;
+    this.groovyFileSystem = groovyFileSystem;
+    this.typeIndex = typeIndex;
   }
 
   public void collect(SensorContext context, List<File> reportsDirs) {
+    collect(context, reportsDirs, new Options());
+  }
+
+  /** Parses the reports found in {@code reportsDirs} and saves the test measures. */
+  public void collect(SensorContext context, List<File> reportsDirs, Options options) {
     List<File> xmlFiles = getReports(reportsDirs);
     if (!xmlFiles.isEmpty()) {
-      parseFiles(context, xmlFiles);
+      parseFiles(context, xmlFiles, options);
     }
   }
 
@@ -91,15 +117,38 @@ public class GroovySurefireParser {
     return dir.listFiles((folder, name) -> name.startsWith(fileNameStart) && name.endsWith(".xml"));
   }
 
-  private void parseFiles(SensorContext context, List<File> reports) {
-    UnitTestIndex index = new UnitTestIndex();
-    parseFiles(reports, index);
+  private void parseFiles(SensorContext context, List<File> reports, Options options) {
+    UnitTestIndex index = parseFiles(reports, options);
     sanitize(index);
-    save(index, context);
+    save(index, context, options);
+  }
+
+  /**
+   * Splits the reports in consecutive batches, each parsed by a worker into its own index. The
+   * partial indexes are merged in report order, so results are the same as a sequential parsing.
+   */
+  // VisibleForTesting
+  static UnitTestIndex parseFiles(List<File> reports, Options options) {
+    UnitTestIndex index = options.newIndex();
+    int threads = options.threads;
+    if (threads <= 1 || reports.size() == 1) {
+      parseFiles(reports, index, options.aggregateOnly);
+      return index;
+    }
+    ParallelExecution.forEachOrdered(
+        ParallelExecution.partition(reports, threads, BATCHES_PER_THREAD),
+        threads,
+        batch -> {
+          UnitTestIndex batchIndex = options.newIndex();
+          parseFiles(batch, batchIndex, options.aggregateOnly);
+          return batchIndex;
+        },
+        index::merge);
+    return index;
   }
 
-  private static void parseFiles(List<File> reports, UnitTestIndex index) {
-    StaxParser parser = new StaxParser(new SurefireStaxHandler(index));
+  private static void parseFiles(List<File> reports, UnitTestIndex index, boolean aggregateOnly) {
+    StaxParser parser = new StaxParser(new SurefireStaxHandler(index, aggregateOnly));
     for (File report : reports) {
       try {
         parser.parse(report);
@@ -119,8 +168,9 @@ public class GroovySurefireParser {
     }
   }
 
-  private void save(UnitTestIndex index, SensorContext context) {
+  private void save(UnitTestIndex index, SensorContext context, Options options) {
     long negativeTimeTestNumber = 0;
+    Map<InputFile, UnitTestClassReport> savedReports = new LinkedHashMap<>();
     for (Map.Entry<String, UnitTestClassReport> entry : index.getIndexByClassname().entrySet()) {
       UnitTestClassReport report = entry.getValue();
       if (report.getTests() > 0) {
@@ -128,6 +178,7 @@ public class GroovySurefireParser {
         InputFile inputFile = getUnitTestInputFile(entry.getKey());
         if (inputFile != null) {
           save(report, inputFile, context);
+          savedReports.put(inputFile, report);
         } else {
           LOGGER.warn("Resource not found: {}", entry.getKey());
         }
@@ -138,6 +189,9 @@ public class GroovySurefireParser {
           "There is {} test(s) reported with negative time by surefire, total duration may not be accurate.",
           negativeTimeTestNumber);
     }
+    if (!savedReports.isEmpty()) {
+      writeDurationReport(context, savedReports, index.getSlowestTests(), options);
+    }
   }
 
   private void save(UnitTestClassReport report, InputFile inputFile, SensorContext context) {
@@ -148,29 +202,122 @@ public class GroovySurefireParser {
     saveMeasure(context, inputFile, CoreMetrics.TEST_FAILURES, report.getFailures());
     saveMeasure(
         context, inputFile, CoreMetrics.TEST_EXECUTION_TIME, report.getDurationMilliseconds());
+    saveMeasure(context, inputFile, GroovySurefireMetrics.SLOW_TESTS, report.getSlowTests());
+    DurationHistogram durations = report.getDurations();
+    if (durations.count() > 0) {
+      saveMeasure(
+          context, inputFile, GroovySurefireMetrics.TEST_DURATION_P50, durations.percentile(0.5));
+      saveMeasure(
+          context, inputFile, GroovySurefireMetrics.TEST_DURATION_P95, durations.percentile(0.95));
+      saveMeasure(context, inputFile, GroovySurefireMetrics.TEST_DURATION_MAX, durations.max());
+    }
+  }
+
+  /**
+   * Writes the slowest test cases of the project and the duration statistics of each test file into
+   * {@link #DURATION_REPORT_FILE_NAME} in the work directory.
+   */
+  private void writeDurationReport(
+      SensorContext context,
+      Map<InputFile, UnitTestClassReport> reports,
+      SlowestTests slowestTests,
+      Options options) {
+    File reportFile = new File(context.fileSystem().workDir(), DURATION_REPORT_FILE_NAME);
+    int slowTests = reports.values().stream().mapToInt(UnitTestClassReport::getSlowTests).sum();
+    try (Writer writer = Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8)) {
+      JsonWriter json = JsonWriter.of(writer);
+      json.beginObject()
+          .prop("slowTestThresholdMs", options.slowTestThresholdMilliseconds)
+          .prop("slowTests", slowTests)
+          .name("slowestTests")
+          .beginArray();
+      for (SlowTest test : slowestTests.getTests()) {
+        InputFile inputFile =
+            getUnitTestInputFile(StringUtils.substringBefore(test.getClassName(), "$"));
+        json.beginObject()
+            .prop("className", test.getClassName())
+            .prop("name", test.getName())
+            .prop("durationMs", test.getDurationMilliseconds());
+        if (inputFile != null) {
+          json.prop("file", inputFile.toString());
+        }
+        json.endObject();
+      }
+      json.endArray().name("files").beginArray();
+      for (Map.Entry<InputFile, UnitTestClassReport> entry : reports.entrySet()) {
+        DurationHistogram durations = entry.getValue().getDurations();
+        json.beginObject()
+            .prop("file", entry.getKey().toString())
+            .prop("tests", durations.count())
+            .prop("slowTests", entry.getValue().getSlowTests());
+        if (durations.count() > 0) {
+          json.prop("p50Ms", durations.percentile(0.5))
+              .prop("p95Ms", durations.percentile(0.95))
+              .prop("maxMs", durations.max());
+        }
+        json.endObject();
+      }
+      json.endArray().endObject().close();
+    } catch (IOException e) {
+      throw new IllegalStateException("Can not write the Surefire test duration report", e);
+    }
+    LOGGER.info(
+        "{} test(s) slower than {} ms, test duration report written to {}",
+        slowTests,
+        options.slowTestThresholdMilliseconds,
+        reportFile);
   }
 
+  @CheckForNull
   protected InputFile getUnitTestInputFile(String classKey) {
+    InputFile declaringFile = typeIndex.inputFile(classKey);
+    if (declaringFile != null && declaringFile.type() == Type.TEST) {
+      return declaringFile;
+    }
     String fileName = StringUtils.replace(classKey, ".", "/");
-    FilePredicates p = fs.predicates();
-    FilePredicate fileNamePredicates =
-        getFileNamePredicateFromSuffixes(p, fileName, groovy.getFileSuffixes());
-    FilePredicate searchPredicate =
-        p.and(p.and(p.hasLanguage(Groovy.KEY), p.hasType(InputFile.Type.TEST)), fileNamePredicates);
-    if (fs.hasFiles(searchPredicate)) {
-      return fs.inputFiles(searchPredicate).iterator().next();
-    } else {
-      return null;
+    for (String suffix : groovy.getFileSuffixes()) {
+      List<InputFile> files = groovyFileSystem.inputFilesEndingWith(fileName + suffix, Type.TEST);
+      if (!files.isEmpty()) {
+        return files.get(0);
+      }
     }
+    return null;
   }
 
-  private static FilePredicate getFileNamePredicateFromSuffixes(
-      FilePredicates p, String fileName, String[] suffixes) {
-    List<FilePredicate> fileNamePredicates = new ArrayList<>(suffixes.length);
-    for (String suffix : suffixes) {
-      fileNamePredicates.add(p.matchesPathPattern("**/" + fileName + suffix));
+  /** How the Surefire reports are parsed and which test duration statistics are computed. */
+  public static final class Options {
+    private int threads = 1;
+    private boolean aggregateOnly = false;
+    private long slowTestThresholdMilliseconds = DEFAULT_SLOW_TEST_THRESHOLD;
+    private int slowestTests = DEFAULT_SLOWEST_TESTS;
+
+    /** Number of threads parsing the reports. */
+    public Options setThreads(int threads) {
+      this.threads = threads;
+      return this;
+    }
+
+    /** Only keep the counters of each test class, no per-test result. */
+    public Options setAggregateOnly(boolean aggregateOnly) {
+      this.aggregateOnly = aggregateOnly;
+      return this;
+    }
+
+    /** Duration above which a test is counted as slow. */
+    public Options setSlowTestThresholdMilliseconds(long slowTestThresholdMilliseconds) {
+      this.slowTestThresholdMilliseconds = slowTestThresholdMilliseconds;
+      return this;
+    }
+
+    /** Number of slowest test cases listed in the duration report. */
+    public Options setSlowestTests(int slowestTests) {
+      this.slowestTests = slowestTests;
+      return this;
+    }
+
+    private UnitTestIndex newIndex() {
+      return new UnitTestIndex(slowTestThresholdMilliseconds, slowestTests);
     }
-    return p.or(fileNamePredicates);
   }
 
   private static <T extends Serializable> void saveMeasure(
@@ -21,12 +21,15 @@ package org.sonar.plugins.groovy.surefire;
 import java.io.File;
 import java.util.Arrays;
 import java.util.List;
+import org.sonar.api.PropertyType;
 import org.sonar.api.batch.DependedUpon;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
 import org.sonar.api.config.Configuration;
+import org.sonar.api.config.PropertyDefinition;
+import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.scan.filesystem.PathResolver;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
@@ -37,6 +40,10 @@ import org.sonar.plugins.groovy.surefire.api.SurefireUtils;
 public class GroovySurefireSensor implements Sensor {
 
   private static final Logger LOGGER = Loggers.get(GroovySurefireSensor.class);
+  static final String SUREFIRE_THREADS = "sonar.groovy.surefire.threads";
+  static final String SUREFIRE_AGGREGATE_ONLY = "sonar.groovy.surefire.aggregateOnly";
+  static final String SUREFIRE_SLOW_TEST_THRESHOLD = "sonar.groovy.surefire.slowTestThreshold";
+  static final String SUREFIRE_SLOWEST_TESTS = "sonar.groovy.surefire.slowestTests";
 
   private final GroovySurefireParser groovySurefireParser;
   private final Configuration settings;
@@ -67,7 +74,21 @@ public class GroovySurefireSensor implements Sensor {
 
   protected void collect(SensorContext context, List<File> reportsDirs) {
     LOGGER.info("parsing {}", reportsDirs);
-    groovySurefireParser.collect(context, reportsDirs);
+    groovySurefireParser.collect(context, reportsDirs, parserOptions());
+  }
+
+  private GroovySurefireParser.Options parserOptions() {
+    return new GroovySurefireParser.Options()
+        .setThreads(settings.getInt(SUREFIRE_THREADS).orElse(1))
+        .setAggregateOnly(settings.getBoolean(SUREFIRE_AGGREGATE_ONLY).orElse(false))
+        .setSlowTestThresholdMilliseconds(
+            settings
+                .getLong(SUREFIRE_SLOW_TEST_THRESHOLD)
+                .orElse(GroovySurefireParser.DEFAULT_SLOW_TEST_THRESHOLD))
+        .setSlowestTests(
+            settings
+                .getInt(SUREFIRE_SLOWEST_TESTS)
+                .orElse(GroovySurefireParser.DEFAULT_SLOWEST_TESTS));
   }
 
   @Override
@@ -76,6 +97,55 @@ public class GroovySurefireSensor implements Sensor {
   }
 
   public static List<Object> getExtensions() {
-    return Arrays.asList(GroovySurefireParser.class, GroovySurefireSensor.class);
+    return Arrays.asList(
+        GroovySurefireParser.class,
+        GroovySurefireSensor.class,
+        GroovySurefireMetrics.class,
+        PropertyDefinition.builder(SUREFIRE_THREADS)
+            .name("Surefire Threads")
+            .description(
+                "Number of threads used to parse the Surefire reports. "
+                    + "Test measures are still saved by a single thread.")
+            .category(Groovy.NAME)
+            .subCategory("Surefire")
+            .onQualifiers(Qualifiers.PROJECT)
+            .defaultValue("1")
+            .type(PropertyType.INTEGER)
+            .build(),
+        PropertyDefinition.builder(SUREFIRE_AGGREGATE_ONLY)
+            .name("Surefire Aggregate Only")
+            .description(
+                "If set to \"true\", only the number of tests, failures, errors and skipped tests "
+                    + "and the total duration of each test class are read from the Surefire reports. "
+                    + "Failure messages, stack traces and test outputs are skipped, which keeps "
+                    + "memory low on large reports.")
+            .category(Groovy.NAME)
+            .subCategory("Surefire")
+            .onQualifiers(Qualifiers.PROJECT)
+            .defaultValue("false")
+            .type(PropertyType.BOOLEAN)
+            .build(),
+        PropertyDefinition.builder(SUREFIRE_SLOW_TEST_THRESHOLD)
+            .name("Slow Test Threshold")
+            .description(
+                "Duration in milliseconds above which an executed test is counted as slow.")
+            .category(Groovy.NAME)
+            .subCategory("Surefire")
+            .onQualifiers(Qualifiers.PROJECT)
+            .defaultValue(String.valueOf(GroovySurefireParser.DEFAULT_SLOW_TEST_THRESHOLD))
+            .type(PropertyType.INTEGER)
+            .build(),
+        PropertyDefinition.builder(SUREFIRE_SLOWEST_TESTS)
+            .name("Slowest Tests")
+            .description(
+                "Number of slowest test cases of the project listed in "
+                    + GroovySurefireParser.DURATION_REPORT_FILE_NAME
+                    + " in the working directory, with the duration statistics of each test file.")
+            .category(Groovy.NAME)
+            .subCategory("Surefire")
+            .onQualifiers(Qualifiers.PROJECT)
+            .defaultValue(String.valueOf(GroovySurefireParser.DEFAULT_SLOWEST_TESTS))
+            .type(PropertyType.INTEGER)
+            .build());
   }
 }
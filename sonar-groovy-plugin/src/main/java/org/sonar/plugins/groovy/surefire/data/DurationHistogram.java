@@ -0,0 +1,109 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.surefire.data;
+
+import java.util.Arrays;
+
+/**
+ * Streaming histogram of test durations in milliseconds. Durations below 64 ms are counted exactly;
+ * above, each power of two is split into 32 buckets, so percentiles are within about 3% of the
+ * exact value while memory only depends on the longest duration, not on the number of tests. The
+ * maximum is exact.
+ */
+public final class DurationHistogram {
+
+  private static final int EXACT_VALUES = 64;
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int EXACT_BITS = Long.numberOfTrailingZeros(EXACT_VALUES);
+
+  private int[] counts = new int[0];
+  private long count = 0L;
+  private long max = 0L;
+
+  /** Records one duration; negative durations are ignored. */
+  public DurationHistogram record(long durationMilliseconds) {
+    if (durationMilliseconds < 0) {
+      return this;
+    }
+    int bucket = bucket(durationMilliseconds);
+    if (bucket >= counts.length) {
+      counts = Arrays.copyOf(counts, Math.max(bucket + 1, 2 * counts.length));
+    }
+    counts[bucket]++;
+    count++;
+    max = Math.max(max, durationMilliseconds);
+    return this;
+  }
+
+  public DurationHistogram merge(DurationHistogram other) {
+    if (other.counts.length > counts.length) {
+      counts = Arrays.copyOf(counts, other.counts.length);
+    }
+    for (int i = 0; i < other.counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    count += other.count;
+    max = Math.max(max, other.max);
+    return this;
+  }
+
+  public long count() {
+    return count;
+  }
+
+  public long max() {
+    return max;
+  }
+
+  /**
+   * Nearest-rank percentile, {@code percentile} being between 0 and 1 excluded. Returns the highest
+   * duration of the bucket holding that rank, capped by the maximum, or 0 if nothing was recorded.
+   */
+  public long percentile(double percentile) {
+    long rank = Math.max(1L, (long) Math.ceil(percentile * count));
+    long seen = 0L;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highestValue(i), max);
+      }
+    }
+    return max;
+  }
+
+  static int bucket(long value) {
+    if (value < EXACT_VALUES) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return EXACT_VALUES + (exponent - EXACT_BITS) * SUB_BUCKETS + subBucket;
+  }
+
+  static long highestValue(int bucket) {
+    if (bucket < EXACT_VALUES) {
+      return bucket;
+    }
+    int exponent = (bucket - EXACT_VALUES) / SUB_BUCKETS + EXACT_BITS;
+    long subBucket = (bucket - EXACT_VALUES) % SUB_BUCKETS;
+    long width = 1L << (exponent - SUB_BUCKET_BITS);
+    return (1L << exponent) + (subBucket + 1) * width - 1;
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.surefire.data;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the {@code limit} slowest test cases seen so far, in a min-heap so that each test costs at
+ * most a comparison with the fastest of the retained ones.
+ */
+public final class SlowestTests {
+
+  private static final Comparator<SlowTest> FASTEST_FIRST =
+      Comparator.comparingLong(SlowTest::getDurationMilliseconds)
+          .thenComparing(SlowTest::getClassName, Comparator.reverseOrder())
+          .thenComparing(SlowTest::getName, Comparator.reverseOrder());
+
+  private final int limit;
+  private final PriorityQueue<SlowTest> heap;
+
+  public SlowestTests(int limit) {
+    this.limit = Math.max(0, limit);
+    this.heap = new PriorityQueue<>(Math.max(1, this.limit), FASTEST_FIRST);
+  }
+
+  /** Whether a test of that duration would currently be retained. */
+  public boolean accepts(long durationMilliseconds) {
+    if (limit == 0 || durationMilliseconds <= 0) {
+      return false;
+    }
+    return heap.size() < limit || durationMilliseconds > heap.peek().getDurationMilliseconds();
+  }
+
+  public SlowestTests add(String className, String name, long durationMilliseconds) {
+    if (accepts(durationMilliseconds)) {
+      heap.add(new SlowTest(className, name, durationMilliseconds));
+      if (heap.size() > limit) {
+        heap.poll();
+      }
+    }
+    return this;
+  }
+
+  public SlowestTests merge(SlowestTests other) {
+    for (SlowTest test : other.heap) {
+      add(test.getClassName(), test.getName(), test.getDurationMilliseconds());
+    }
+    return this;
+  }
+
+  /** The retained tests, the slowest first. */
+  public List<SlowTest> getTests() {
+    List<SlowTest> tests = new ArrayList<>(heap);
+    tests.sort(FASTEST_FIRST.reversed());
+    return tests;
+  }
+
+  public static final class SlowTest {
+    private final String className;
+    private final String name;
+    private final long durationMilliseconds;
+
+    SlowTest(String className, String name, long durationMilliseconds) {
+      this.className = className;
+      this.name = name;
+      this.durationMilliseconds = durationMilliseconds;
+    }
+
+    public String getClassName() {
+      return className;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getDurationMilliseconds() {
+      return durationMilliseconds;
+    }
+  }
+}
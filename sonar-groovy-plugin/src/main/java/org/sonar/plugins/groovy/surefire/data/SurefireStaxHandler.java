@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -19,6 +18,9 @@
  */
 package org.sonar.plugins.groovy.surefire.data;
 
+import java.text.ParseException;
+import java.util.Locale;
+import javax.xml.stream.XMLStreamException;
 import org.apache.commons.lang.StringUtils;
 import org.codehaus.staxmate.in.ElementFilter;
 import org.codehaus.staxmate.in.SMEvent;
@@ -27,24 +29,32 @@ import org.codehaus.staxmate.in.SMInputCursor;
 import org.sonar.api.utils.ParsingUtils;
 import org.sonar.plugins.groovy.utils.StaxParser.XmlStreamHandler;
 
-import javax.xml.stream.XMLStreamException;
-
-import java.text.ParseException;
-import java.util.Locale;
-
 public class SurefireStaxHandler implements XmlStreamHandler {
 
   private final UnitTestIndex index;
+  private final boolean aggregateOnly;
 
   public SurefireStaxHandler(UnitTestIndex index) {
+    this(index, false);
+  }
+
+  /**
+   * @param aggregateOnly if {@code true}, only the counters and durations of the test classes are
+   *     kept: no {@link UnitTestResult} is created, and the text of failures, errors and outputs is
+   *     skipped without being read into strings.
+   */
+  public SurefireStaxHandler(UnitTestIndex index, boolean aggregateOnly) {
     this.index = index;
+    this.aggregateOnly = aggregateOnly;
   }
 
   @Override
   public void stream(SMHierarchicCursor rootCursor) throws XMLStreamException {
     SMInputCursor testSuite = rootCursor.constructDescendantCursor(new ElementFilter("testsuite"));
     SMEvent testSuiteEvent;
-    for (testSuiteEvent = testSuite.getNext(); testSuiteEvent != null; testSuiteEvent = testSuite.getNext()) {
+    for (testSuiteEvent = testSuite.getNext();
+        testSuiteEvent != null;
+        testSuiteEvent = testSuite.getNext()) {
       if (testSuiteEvent.compareTo(SMEvent.START_ELEMENT) == 0) {
         String testSuiteClassName = testSuite.getAttrValue("name");
         if (StringUtils.contains(testSuiteClassName, "$")) {
@@ -56,42 +66,82 @@ public class SurefireStaxHandler implements XmlStreamHandler {
     }
   }
 
-  private void handleTestCases(String testSuiteClassName, SMInputCursor testCase) throws XMLStreamException {
+  private void handleTestCases(String testSuiteClassName, SMInputCursor testCase)
+      throws XMLStreamException {
     SMEvent event;
     for (event = testCase.getNext(); event != null; event = testCase.getNext()) {
       if (event.compareTo(SMEvent.START_ELEMENT) == 0) {
         String testClassName = getClassname(testCase, testSuiteClassName);
         UnitTestClassReport classReport = index.index(testClassName);
-        parseTestCase(testCase, classReport);
+        // attributes must be read before the children of the test case, the time only once
+        long duration = getTimeAttributeInMS(testCase);
+        SlowestTests slowestTests = index.getSlowestTests();
+        String slowTestName = slowestTests.accepts(duration) ? getTestCaseName(testCase) : null;
+        String status =
+            aggregateOnly
+                ? countTestCase(testCase, classReport, duration)
+                : parseTestCase(testCase, classReport, duration);
+        if (slowTestName != null && !UnitTestResult.STATUS_SKIPPED.equals(status)) {
+          slowestTests.add(testClassName, slowTestName, duration);
+        }
       }
     }
   }
 
-  private static String getClassname(SMInputCursor testCaseCursor, String defaultClassname) throws XMLStreamException {
+  private static String getClassname(SMInputCursor testCaseCursor, String defaultClassname)
+      throws XMLStreamException {
     String testClassName = testCaseCursor.getAttrValue("classname");
-    if(StringUtils.isNotBlank(testClassName) && testClassName.endsWith(")")) {
+    if (StringUtils.isNotBlank(testClassName) && testClassName.endsWith(")")) {
       testClassName = testClassName.substring(0, testClassName.indexOf('('));
     }
     return StringUtils.defaultIfBlank(testClassName, defaultClassname);
   }
 
-  private static void parseTestCase(SMInputCursor testCaseCursor, UnitTestClassReport report) throws XMLStreamException {
-    report.add(parseTestResult(testCaseCursor));
+  private static String parseTestCase(
+      SMInputCursor testCaseCursor, UnitTestClassReport report, long duration)
+      throws XMLStreamException {
+    UnitTestResult result = parseTestResult(testCaseCursor, duration);
+    report.add(result);
+    return result.getStatus();
+  }
+
+  private static String countTestCase(
+      SMInputCursor testCaseCursor, UnitTestClassReport report, long time)
+      throws XMLStreamException {
+    String status = UnitTestResult.STATUS_OK;
+    long duration = time;
+    // the parent cursor skips the remaining children, including their text, when it moves on
+    SMInputCursor childNode = testCaseCursor.childElementCursor();
+    if (childNode.getNext() != null) {
+      String elementName = childNode.getLocalName();
+      if ("skipped".equals(elementName)) {
+        status = UnitTestResult.STATUS_SKIPPED;
+        duration = 0L;
+      } else if ("failure".equals(elementName)) {
+        status = UnitTestResult.STATUS_FAILURE;
+      } else if ("error".equals(elementName)) {
+        status = UnitTestResult.STATUS_ERROR;
+      }
+    }
+    report.count(status, duration);
+    return status;
   }
 
-  private static void setStackAndMessage(UnitTestResult result, SMInputCursor stackAndMessageCursor) throws XMLStreamException {
+  private static void setStackAndMessage(UnitTestResult result, SMInputCursor stackAndMessageCursor)
+      throws XMLStreamException {
     result.setMessage(stackAndMessageCursor.getAttrValue("message"));
     String stack = stackAndMessageCursor.collectDescendantText();
     result.setStackTrace(stack);
   }
 
-  private static UnitTestResult parseTestResult(SMInputCursor testCaseCursor) throws XMLStreamException {
+  private static UnitTestResult parseTestResult(SMInputCursor testCaseCursor, long time)
+      throws XMLStreamException {
     UnitTestResult detail = new UnitTestResult();
     String name = getTestCaseName(testCaseCursor);
     detail.setName(name);
 
     String status = UnitTestResult.STATUS_OK;
-    long duration = getTimeAttributeInMS(testCaseCursor);
+    long duration = time;
 
     SMInputCursor childNode = testCaseCursor.descendantElementCursor();
     if (childNode.getNext() != null) {
@@ -136,5 +186,4 @@ public class SurefireStaxHandler implements XmlStreamHandler {
     }
     return name;
   }
-
 }
@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -33,9 +32,34 @@ public final class UnitTestClassReport {
   private long negativeTimeTestNumber = 0L;
   private List<UnitTestResult> results = null;
 
+  private final long slowTestThresholdMilliseconds;
+  private int slowTests = 0;
+  private final DurationHistogram durations = new DurationHistogram();
+
+  public UnitTestClassReport() {
+    this(Long.MAX_VALUE);
+  }
+
+  /**
+   * @param slowTestThresholdMilliseconds tests that are not skipped and last longer than this are
+   *     counted as slow
+   */
+  public UnitTestClassReport(long slowTestThresholdMilliseconds) {
+    this.slowTestThresholdMilliseconds = slowTestThresholdMilliseconds;
+  }
+
   public UnitTestClassReport add(UnitTestClassReport other) {
-    for (UnitTestResult otherResult : other.getResults()) {
-      add(otherResult);
+    errors += other.errors;
+    failures += other.failures;
+    skipped += other.skipped;
+    tests += other.tests;
+    durationMilliseconds += other.durationMilliseconds;
+    negativeTimeTestNumber += other.negativeTimeTestNumber;
+    slowTests += other.slowTests;
+    durations.merge(other.durations);
+    if (other.results != null) {
+      initResults();
+      results.addAll(other.results);
     }
     return this;
   }
@@ -43,20 +67,31 @@ public final class UnitTestClassReport {
   public UnitTestClassReport add(UnitTestResult result) {
     initResults();
     results.add(result);
-    if (result.getStatus().equals(UnitTestResult.STATUS_SKIPPED)) {
+    return count(result.getStatus(), result.getDurationMilliseconds());
+  }
+
+  /** Updates the counters for one test, without keeping its result. */
+  public UnitTestClassReport count(String status, long durationMilliseconds) {
+    if (status.equals(UnitTestResult.STATUS_SKIPPED)) {
       skipped += 1;
 
-    } else if (result.getStatus().equals(UnitTestResult.STATUS_FAILURE)) {
+    } else if (status.equals(UnitTestResult.STATUS_FAILURE)) {
       failures += 1;
 
-    } else if (result.getStatus().equals(UnitTestResult.STATUS_ERROR)) {
+    } else if (status.equals(UnitTestResult.STATUS_ERROR)) {
       errors += 1;
     }
     tests += 1;
-    if (result.getDurationMilliseconds() < 0) {
+    if (durationMilliseconds < 0) {
       negativeTimeTestNumber += 1;
     } else {
-      durationMilliseconds += result.getDurationMilliseconds();
+      this.durationMilliseconds += durationMilliseconds;
+      if (!status.equals(UnitTestResult.STATUS_SKIPPED)) {
+        durations.record(durationMilliseconds);
+        if (durationMilliseconds > slowTestThresholdMilliseconds) {
+          slowTests += 1;
+        }
+      }
     }
     return this;
   }
@@ -87,6 +122,16 @@ public final class UnitTestClassReport {
     return durationMilliseconds;
   }
 
+  /** Number of executed tests that lasted longer than the slow test threshold. */
+  public int getSlowTests() {
+    return slowTests;
+  }
+
+  /** Durations of the executed tests, skipped tests and negative durations excluded. */
+  public DurationHistogram getDurations() {
+    return durations;
+  }
+
   public long getNegativeTimeTestNumber() {
     return negativeTimeTestNumber;
   }
@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -27,15 +26,27 @@ import java.util.Set;
 public class UnitTestIndex {
 
   private Map<String, UnitTestClassReport> indexByClassname;
+  private final long slowTestThresholdMilliseconds;
+  private final SlowestTests slowestTests;
 
   public UnitTestIndex() {
+    this(Long.MAX_VALUE, 0);
+  }
+
+  /**
+   * @param slowTestThresholdMilliseconds duration above which a test is counted as slow
+   * @param slowestTestsLimit number of slowest test cases to retain
+   */
+  public UnitTestIndex(long slowTestThresholdMilliseconds, int slowestTestsLimit) {
     this.indexByClassname = new HashMap<>();
+    this.slowTestThresholdMilliseconds = slowTestThresholdMilliseconds;
+    this.slowestTests = new SlowestTests(slowestTestsLimit);
   }
 
   public UnitTestClassReport index(String classname) {
     UnitTestClassReport classReport = indexByClassname.get(classname);
     if (classReport == null) {
-      classReport = new UnitTestClassReport();
+      classReport = new UnitTestClassReport(slowTestThresholdMilliseconds);
       indexByClassname.put(classname, classReport);
     }
     return classReport;
@@ -53,6 +64,10 @@ public class UnitTestIndex {
     return indexByClassname;
   }
 
+  public SlowestTests getSlowestTests() {
+    return slowestTests;
+  }
+
   public int size() {
     return indexByClassname.size();
   }
@@ -68,8 +83,19 @@ public class UnitTestIndex {
     return null;
   }
 
+  /**
+   * Adds all the results of {@code other} to this index, class by class. Used to combine indexes
+   * filled from disjoint sets of reports.
+   */
+  public UnitTestIndex merge(UnitTestIndex other) {
+    for (Map.Entry<String, UnitTestClassReport> entry : other.indexByClassname.entrySet()) {
+      index(entry.getKey()).add(entry.getValue());
+    }
+    slowestTests.merge(other.slowestTests);
+    return this;
+  }
+
   public void remove(String classname) {
     indexByClassname.remove(classname);
   }
-
 }
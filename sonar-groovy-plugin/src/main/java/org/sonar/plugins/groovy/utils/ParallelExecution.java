@@ -0,0 +1,121 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs a computation on a bounded pool of worker threads and hands the results back to the calling
+ * thread in input order. This keeps everything that touches the {@code SensorContext} on a single
+ * thread, while the expensive per-item work is spread over several cores.
+ */
+public final class ParallelExecution {
+
+  private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+  private ParallelExecution() {}
+
+  /**
+   * Applies {@code work} to each item and passes the results to {@code consumer}, in the order of
+   * {@code items}. With {@code threads <= 1} everything runs on the calling thread. Otherwise at
+   * most {@code 2 * threads} results are pending at any time, so memory stays bounded.
+   *
+   * <p>{@code work} must only use thread-confined state; {@code consumer} always runs on the
+   * calling thread.
+   */
+  public static <T, R> void forEachOrdered(
+      Iterable<T> items, int threads, Function<T, R> work, Consumer<R> consumer) {
+    if (threads <= 1) {
+      for (T item : items) {
+        consumer.accept(work.apply(item));
+      }
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads, threadFactory());
+    try {
+      int maxPending = 2 * threads;
+      Deque<Future<R>> pending = new ArrayDeque<>(maxPending);
+      Iterator<T> iterator = items.iterator();
+      while (iterator.hasNext() || !pending.isEmpty()) {
+        while (iterator.hasNext() && pending.size() < maxPending) {
+          T item = iterator.next();
+          pending.add(executor.submit(() -> work.apply(item)));
+        }
+        consumer.accept(await(pending.poll()));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Splits {@code items} into consecutive batches, about {@code batchesPerThread} per thread, so
+   * that per-batch state can be merged afterwards in the order of {@code items}.
+   */
+  public static <T> List<List<T>> partition(List<T> items, int threads, int batchesPerThread) {
+    int batches = Math.max(1, threads * batchesPerThread);
+    int batchSize = Math.max(1, (items.size() + batches - 1) / batches);
+    List<List<T>> result = new ArrayList<>();
+    for (int i = 0; i < items.size(); i += batchSize) {
+      result.add(items.subList(i, Math.min(i + batchSize, items.size())));
+    }
+    return result;
+  }
+
+  private static <R> R await(Future<R> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for analysis results", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  private static ThreadFactory threadFactory() {
+    String prefix = "sonar-groovy-" + POOL_NUMBER.incrementAndGet() + "-worker-";
+    AtomicInteger threadNumber = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, prefix + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -41,6 +41,9 @@ import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.FileLinesContext;
 import org.sonar.api.measures.FileLinesContextFactory;
 import org.sonar.plugins.groovy.foundation.Groovy;
+import org.sonar.plugins.groovy.foundation.GroovyAstProvider;
+import org.sonar.plugins.groovy.foundation.GroovyFileSystem;
+import org.sonar.plugins.groovy.foundation.GroovyTypeIndex;
 
 public class GroovySensorTest {
 
@@ -48,13 +51,24 @@ public class GroovySensorTest {
   private FileLinesContextFactory fileLinesContextFactory = mock(FileLinesContextFactory.class);
   private DefaultFileSystem fileSystem = new DefaultFileSystem(Paths.get("."));
   private GroovySensor sensor =
-      new GroovySensor(settings.asConfig(), fileLinesContextFactory, fileSystem);
+      new GroovySensor(
+          settings.asConfig(),
+          fileLinesContextFactory,
+          fileSystem,
+          astProvider(),
+          new GroovyTypeIndex(new GroovyFileSystem(fileSystem)));
 
   @Test
   public void do_nothing_when_no_groovy_file() throws IOException {
     SensorContextTester context = SensorContextTester.create(Paths.get("."));
     context = Mockito.spy(context);
-    sensor = new GroovySensor(settings.asConfig(), fileLinesContextFactory, context.fileSystem());
+    sensor =
+        new GroovySensor(
+            settings.asConfig(),
+            fileLinesContextFactory,
+            context.fileSystem(),
+            astProvider(),
+            new GroovyTypeIndex(new GroovyFileSystem(context.fileSystem())));
     sensor.execute(context);
 
     Mockito.verify(context, Mockito.never()).newHighlighting();
@@ -70,10 +84,16 @@ public class GroovySensorTest {
     testMetrics(true, 3);
   }
 
+  @Test
+  public void compute_metrics_on_several_threads() throws IOException {
+    settings.setProperty(GroovySensor.ANALYSIS_THREADS, 4);
+    testMetrics(false, 5);
+  }
+
   private void testMetrics(boolean headerComment, int expectedCommentMetric) throws IOException {
     settings.setProperty(GroovySensor.IGNORE_HEADER_COMMENTS, headerComment);
 
-    Path sourceFile = TestUtils.getResource(getClass(), "../gmetrics/Greeting.groovy");
+    Path sourceFile = TestUtils.getResource(getClass(), "../metrics/Greeting.groovy");
     SensorContextTester context = SensorContextTester.create(sourceFile.getParent());
 
     fileSystem = context.fileSystem();
@@ -89,7 +109,13 @@ public class GroovySensorTest {
     when(fileLinesContextFactory.createFor(any(DefaultInputFile.class)))
         .thenReturn(fileLinesContext);
 
-    sensor = new GroovySensor(settings.asConfig(), fileLinesContextFactory, fileSystem);
+    sensor =
+        new GroovySensor(
+            settings.asConfig(),
+            fileLinesContextFactory,
+            fileSystem,
+            astProvider(),
+            new GroovyTypeIndex(new GroovyFileSystem(fileSystem)));
     sensor.execute(context);
 
     String key = groovyFile.key();
@@ -101,6 +127,7 @@ public class GroovySensorTest {
         .isEqualTo(expectedCommentMetric);
 
     assertThat(context.measure(key, CoreMetrics.COMPLEXITY).value()).isEqualTo(4);
+    assertThat(context.measure(key, CoreMetrics.COGNITIVE_COMPLEXITY).value()).isEqualTo(4);
 
     // 11 times for comment because we register comment even when ignoring header comment
     Mockito.verify(fileLinesContext, Mockito.times(17))
@@ -110,6 +137,10 @@ public class GroovySensorTest {
     Mockito.verify(fileLinesContext, Mockito.times(1)).save();
   }
 
+  private GroovyAstProvider astProvider() {
+    return new GroovyAstProvider();
+  }
+
   @Test
   public void test_toString() {
     assertThat(sensor).hasToString("GroovySensor");
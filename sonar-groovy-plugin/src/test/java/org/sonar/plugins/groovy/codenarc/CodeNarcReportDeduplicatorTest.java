@@ -0,0 +1,61 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.codenarc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.sonar.plugins.groovy.codenarc.CodeNarcXMLParser.CodeNarcViolation;
+
+public class CodeNarcReportDeduplicatorTest {
+
+  @Test
+  public void should_only_drop_violations_of_previous_reports() {
+    CodeNarcReportDeduplicator deduplicator = new CodeNarcReportDeduplicator();
+    CodeNarcViolation violation = new CodeNarcViolation("EmptyClass", "a/A.groovy", "2", "msg");
+
+    assertThat(deduplicator.isDuplicate(violation)).isFalse();
+    assertThat(deduplicator.isDuplicate(violation)).isFalse();
+    deduplicator.endReport();
+
+    assertThat(deduplicator.isDuplicate(violation)).isTrue();
+    assertThat(
+            deduplicator.isDuplicate(new CodeNarcViolation("EmptyClass", "a/A.groovy", "3", "msg")))
+        .isFalse();
+    assertThat(
+            deduplicator.isDuplicate(new CodeNarcViolation("EmptyClass", "a/B.groovy", "2", "msg")))
+        .isFalse();
+    assertThat(deduplicator.isDuplicate(new CodeNarcViolation("EmptyClass", "a/A.groovy", "2", "")))
+        .isFalse();
+    assertThat(deduplicator.duplicates()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_keep_violations_with_colliding_hashes() {
+    CodeNarcReportDeduplicator deduplicator = new CodeNarcReportDeduplicator();
+    // "Aa" and "BB" have the same hash code
+    deduplicator.isDuplicate(new CodeNarcViolation("EmptyClass", "a/A.groovy", "2", "Aa"));
+    deduplicator.endReport();
+
+    assertThat(
+            deduplicator.isDuplicate(new CodeNarcViolation("EmptyClass", "a/A.groovy", "2", "BB")))
+        .isFalse();
+    assertThat(deduplicator.duplicates()).isZero();
+  }
+}
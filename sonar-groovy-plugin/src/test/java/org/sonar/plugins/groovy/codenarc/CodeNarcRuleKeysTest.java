@@ -0,0 +1,62 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.codenarc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import org.junit.Test;
+import org.sonar.api.rule.RuleKey;
+
+public class CodeNarcRuleKeysTest {
+
+  @Test
+  public void should_find_active_rules_by_internal_key() {
+    CodeNarcRuleKeys ruleKeys =
+        new CodeNarcRuleKeys(
+            new ActiveRulesBuilderWrapper()
+                .addRule("org.codenarc.rule.basic.EmptyClassRule")
+                .setInternalKey("EmptyClass")
+                .build());
+
+    assertThat(ruleKeys.ruleKey("EmptyClass"))
+        .isEqualTo(
+            RuleKey.of(
+                CodeNarcRulesDefinition.REPOSITORY_KEY, "org.codenarc.rule.basic.EmptyClassRule"));
+    assertThat(ruleKeys.ignoredViolations()).isEmpty();
+  }
+
+  @Test
+  public void should_count_violations_of_unknown_rules() {
+    CodeNarcRuleKeys ruleKeys =
+        new CodeNarcRuleKeys(
+            new ActiveRulesBuilderWrapper()
+                .addRule("org.codenarc.rule.basic.EmptyClassRule")
+                .setInternalKey("EmptyClass")
+                .build());
+
+    assertThat(ruleKeys.ruleKey("LineLength")).isNull();
+    assertThat(ruleKeys.ruleKey("EmptyMethod")).isNull();
+    assertThat(ruleKeys.ruleKey("LineLength")).isNull();
+    ruleKeys.logIgnoredViolations();
+
+    assertThat(ruleKeys.ignoredViolations())
+        .containsExactly(entry("EmptyMethod", 1), entry("LineLength", 2));
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.codenarc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.codenarc.rule.Rule;
+import org.codenarc.ruleset.ListRuleSet;
+import org.codenarc.ruleset.RuleSet;
+import org.codenarc.source.SourceCode;
+import org.junit.Test;
+
+public class CodeNarcRuleProfilerTest {
+
+  private static final long COMPILATION_MILLIS = 50;
+
+  @Test
+  public void should_not_charge_ast_compilation_to_rules() throws Throwable {
+    Rule astRule = rule("AstRule");
+    Rule lineRule = rule("LineRule");
+    SourceCode sourceCode = mock(SourceCode.class);
+    when(sourceCode.getAst()).thenAnswer(invocation -> spin());
+
+    CodeNarcRuleProfiler profiler = new CodeNarcRuleProfiler();
+    RuleSet profiled =
+        profiler.profile(
+            new ListRuleSet(Arrays.asList(lineRule, astRule)), rule -> rule == astRule);
+    for (Object rule : profiled.getRules()) {
+      ((Rule) rule).applyTo(sourceCode);
+    }
+
+    long compilation = profiler.astCompilationNanos();
+    assertThat(compilation).isPositive();
+    assertThat(profiler.statistics())
+        .allSatisfy(
+            statistics -> {
+              assertThat(statistics.invocations()).isEqualTo(1);
+              assertThat(statistics.cpuTimeNanos()).isLessThan(compilation / 2);
+            });
+  }
+
+  private static Rule rule(String name) throws Throwable {
+    Rule rule = mock(Rule.class);
+    when(rule.getName()).thenReturn(name);
+    when(rule.applyTo(any())).thenReturn(new ArrayList<>());
+    return rule;
+  }
+
+  /** Busy waits, so that the time is also spent on the CPU. */
+  private static Object spin() {
+    long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(COMPILATION_MILLIS);
+    while (System.nanoTime() < end) {
+      // compiling
+    }
+    return null;
+  }
+}
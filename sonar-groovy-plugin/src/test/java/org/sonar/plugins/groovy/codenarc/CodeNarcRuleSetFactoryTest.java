@@ -0,0 +1,91 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.codenarc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import org.codenarc.rule.formatting.LineLengthRule;
+import org.codenarc.rule.generic.IllegalClassMemberRule;
+import org.codenarc.ruleset.RuleSet;
+import org.junit.Test;
+import org.sonar.api.batch.rule.ActiveRules;
+
+public class CodeNarcRuleSetFactoryTest {
+
+  private final CodeNarcRuleSetFactory factory = new CodeNarcRuleSetFactory();
+
+  @Test
+  public void should_configure_rules_from_active_rules() {
+    ActiveRules activeRules =
+        new ActiveRulesBuilderWrapper()
+            .addRule("org.codenarc.rule.formatting.LineLengthRule")
+            .addParam("length", "80")
+            .addParam("ignoreImportStatements", "")
+            .addRule("org.codenarc.rule.generic.IllegalClassMemberRule.fixed")
+            .build();
+
+    List<?> rules = factory.ruleSet(activeRules).getRules();
+
+    assertThat(rules).hasSize(2);
+    assertThat(rules.get(0)).isInstanceOf(LineLengthRule.class);
+    assertThat(((LineLengthRule) rules.get(0)).getLength()).isEqualTo(80);
+    assertThat(((LineLengthRule) rules.get(0)).getIgnoreImportStatements()).isTrue();
+    assertThat(rules.get(1)).isInstanceOf(IllegalClassMemberRule.class);
+  }
+
+  @Test
+  public void should_create_new_rules_for_each_rule_set() {
+    RuleSet first =
+        factory.ruleSet(
+            new ActiveRulesBuilderWrapper()
+                .addRule("org.codenarc.rule.formatting.LineLengthRule")
+                .addParam("length", "80")
+                .build());
+    RuleSet same =
+        factory.ruleSet(
+            new ActiveRulesBuilderWrapper()
+                .addRule("org.codenarc.rule.formatting.LineLengthRule")
+                .addParam("length", "80")
+                .build());
+    RuleSet other =
+        factory.ruleSet(
+            new ActiveRulesBuilderWrapper()
+                .addRule("org.codenarc.rule.formatting.LineLengthRule")
+                .addParam("length", "100")
+                .build());
+
+    LineLengthRule firstRule = (LineLengthRule) first.getRules().get(0);
+    LineLengthRule sameRule = (LineLengthRule) same.getRules().get(0);
+    assertThat(sameRule).isNotSameAs(firstRule);
+    assertThat(sameRule.getLength()).isEqualTo(firstRule.getLength()).isEqualTo(80);
+    assertThat(((LineLengthRule) other.getRules().get(0)).getLength()).isEqualTo(100);
+  }
+
+  @Test
+  public void should_fail_on_unknown_rule_class() {
+    ActiveRules activeRules =
+        new ActiveRulesBuilderWrapper().addRule("org.codenarc.rule.UnknownRule").build();
+
+    assertThatThrownBy(() -> factory.ruleSet(activeRules))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("org.codenarc.rule.UnknownRule");
+  }
+}
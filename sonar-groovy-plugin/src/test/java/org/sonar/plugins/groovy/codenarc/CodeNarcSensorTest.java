@@ -28,9 +28,16 @@ import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.codenarc.rule.formatting.LineLengthRule;
+import org.codenarc.rule.formatting.TrailingWhitespaceRule;
+import org.codenarc.rule.imports.UnusedImportRule;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -42,6 +49,7 @@ import org.sonar.api.batch.sensor.internal.DefaultSensorDescriptor;
 import org.sonar.api.batch.sensor.internal.SensorContextTester;
 import org.sonar.api.config.internal.MapSettings;
 import org.sonar.plugins.groovy.foundation.Groovy;
+import org.sonar.plugins.groovy.foundation.GroovyAstProvider;
 import org.sonar.plugins.groovy.foundation.GroovyFileSystem;
 
 public class CodeNarcSensorTest {
@@ -61,7 +69,12 @@ public class CodeNarcSensorTest {
   @Test
   public void test_description() {
     CodeNarcSensor sensor =
-        new CodeNarcSensor(null, new GroovyFileSystem(sensorContextTester.fileSystem()));
+        new CodeNarcSensor(
+            sensorContextTester.activeRules(),
+            settings.asConfig(),
+            new GroovyFileSystem(sensorContextTester.fileSystem()),
+            astProvider(),
+            new CodeNarcRuleSetFactory());
     DefaultSensorDescriptor defaultSensorDescriptor = new DefaultSensorDescriptor();
     sensor.describe(defaultSensorDescriptor);
     assertThat(defaultSensorDescriptor.languages()).containsOnly(Groovy.KEY);
@@ -101,7 +114,10 @@ public class CodeNarcSensorTest {
     CodeNarcSensor sensor =
         new CodeNarcSensor(
             sensorContextTester.activeRules(),
-            new GroovyFileSystem(sensorContextTester.fileSystem()));
+            settings.asConfig(),
+            new GroovyFileSystem(sensorContextTester.fileSystem()),
+            astProvider(),
+            new CodeNarcRuleSetFactory());
     sensor.execute(sensorContextTester);
 
     assertThat(sensorContextTester.allIssues()).hasSize(17);
@@ -126,7 +142,10 @@ public class CodeNarcSensorTest {
     CodeNarcSensor sensor =
         new CodeNarcSensor(
             sensorContextTester.activeRules(),
-            new GroovyFileSystem(sensorContextTester.fileSystem()));
+            settings.asConfig(),
+            new GroovyFileSystem(sensorContextTester.fileSystem()),
+            astProvider(),
+            new CodeNarcRuleSetFactory());
     sensor.execute(sensorContextTester);
 
     assertThat(sensorContextTester.allIssues()).isEmpty();
@@ -148,7 +167,10 @@ public class CodeNarcSensorTest {
     CodeNarcSensor sensor =
         new CodeNarcSensor(
             sensorContextTester.activeRules(),
-            new GroovyFileSystem(sensorContextTester.fileSystem()));
+            settings.asConfig(),
+            new GroovyFileSystem(sensorContextTester.fileSystem()),
+            astProvider(),
+            new CodeNarcRuleSetFactory());
     sensor.execute(sensorContextTester);
 
     assertThat(sensorContextTester.allIssues()).isEmpty();
@@ -168,12 +190,161 @@ public class CodeNarcSensorTest {
     CodeNarcSensor sensor =
         new CodeNarcSensor(
             sensorContextTester.activeRules(),
-            new GroovyFileSystem(sensorContextTester.fileSystem()));
+            settings.asConfig(),
+            new GroovyFileSystem(sensorContextTester.fileSystem()),
+            astProvider(),
+            new CodeNarcRuleSetFactory());
     sensor.execute(sensorContextTester);
 
     assertThat(sensorContextTester.allIssues()).hasSize(1);
   }
 
+  @Test
+  public void should_write_rule_profiling_report() throws IOException {
+    settings.setProperty(CodeNarcSensor.CODENARC_PROFILING, true);
+    addFileWithContent("src/sample.groovy", "package source\nclass SourceFile1 {\n}");
+    addFileWithContent("src/other.groovy", "package source\nclass SourceFile2 { def a }");
+
+    ActiveRulesBuilderWrapper activeRulesBuilder =
+        new ActiveRulesBuilderWrapper()
+            .addRule("org.codenarc.rule.basic.EmptyClassRule")
+            .setInternalKey("EmptyClass");
+    sensorContextTester.setActiveRules(activeRulesBuilder.build());
+
+    CodeNarcSensor sensor =
+        new CodeNarcSensor(
+            sensorContextTester.activeRules(),
+            settings.asConfig(),
+            new GroovyFileSystem(sensorContextTester.fileSystem()),
+            astProvider(),
+            new CodeNarcRuleSetFactory());
+    sensor.execute(sensorContextTester);
+
+    assertThat(sensorContextTester.allIssues()).hasSize(1);
+    Path report =
+        sensorContextTester
+            .fileSystem()
+            .workDir()
+            .toPath()
+            .resolve("codenarc")
+            .resolve(CodeNarcRuleProfiler.REPORT_FILE_NAME);
+    assertThat(new String(Files.readAllBytes(report), StandardCharsets.UTF_8))
+        .contains("\"astCompilation\":{\"cpuTimeMs\":")
+        .contains("\"rule\":\"EmptyClass\"")
+        .contains("\"invocations\":2")
+        .contains("\"filesWithViolations\":1")
+        .contains("\"violations\":1");
+  }
+
+  @Test
+  public void should_report_same_issues_from_cache() throws IOException {
+    settings.setProperty(CodeNarcSensor.CODENARC_CACHE, true);
+    settings.setProperty(CodeNarcSensor.CODENARC_CACHE_DIR, temp.newFolder().getAbsolutePath());
+    addFileWithContent("src/sample.groovy", "package source\nclass SourceFile1 {\n}");
+
+    ActiveRulesBuilderWrapper activeRulesBuilder =
+        new ActiveRulesBuilderWrapper()
+            .addRule("org.codenarc.rule.basic.EmptyClassRule")
+            .setInternalKey("EmptyClass");
+    sensorContextTester.setActiveRules(activeRulesBuilder.build());
+    List<String> firstIssues = runCodeNarcOnComponents();
+
+    sensorContextTester = SensorContextTester.create(sensorContextTester.fileSystem().baseDir());
+    sensorContextTester.fileSystem().setWorkDir(temp.newFolder().toPath());
+    settings.setProperty(CodeNarcSensor.CODENARC_PROFILING, true);
+    sensorContextTester.setSettings(settings);
+    sensorContextTester.setActiveRules(activeRulesBuilder.build());
+    addFileWithContent("src/sample.groovy", "package source\nclass SourceFile1 {\n}");
+
+    assertThat(runCodeNarcOnComponents()).isEqualTo(firstIssues).hasSize(1);
+    assertThat(sensorContextTester.allIssues().iterator().next().primaryLocation().message())
+        .isNotEmpty();
+    // served from the cache: the rule did not run
+    Path report =
+        sensorContextTester
+            .fileSystem()
+            .workDir()
+            .toPath()
+            .resolve("codenarc")
+            .resolve(CodeNarcRuleProfiler.REPORT_FILE_NAME);
+    assertThat(new String(Files.readAllBytes(report), StandardCharsets.UTF_8))
+        .contains("\"invocations\":0");
+  }
+
+  @Test
+  public void should_not_cache_without_cache_directory() throws IOException {
+    settings.setProperty(CodeNarcSensor.CODENARC_CACHE, true);
+    addFileWithContent("src/sample.groovy", "package source\nclass SourceFile1 {\n}");
+
+    ActiveRulesBuilderWrapper activeRulesBuilder =
+        new ActiveRulesBuilderWrapper()
+            .addRule("org.codenarc.rule.basic.EmptyClassRule")
+            .setInternalKey("EmptyClass");
+    sensorContextTester.setActiveRules(activeRulesBuilder.build());
+
+    assertThat(runCodeNarcOnComponents()).hasSize(1);
+    try (Stream<Path> files = Files.walk(sensorContextTester.fileSystem().workDir().toPath())) {
+      assertThat(files.map(file -> file.getFileName().toString()))
+          .noneMatch(name -> name.endsWith(".cache"));
+    }
+  }
+
+  @Test
+  public void should_ignore_violations_repeated_across_reports() throws Exception {
+    testOverlappingReports(1);
+  }
+
+  @Test
+  public void should_parse_reports_on_several_threads() throws Exception {
+    testOverlappingReports(4);
+  }
+
+  private void testOverlappingReports(int threads) throws IOException {
+    ActiveRulesBuilderWrapper activeRulesBuilder = new ActiveRulesBuilderWrapper();
+    for (String rule :
+        Arrays.asList(
+            "BooleanInstantiation",
+            "DuplicateImport",
+            "EmptyCatchBlock",
+            "EmptyElseBlock",
+            "EmptyFinallyBlock",
+            "EmptyForStatement",
+            "EmptyIfStatement",
+            "EmptyTryBlock",
+            "EmptyWhileStatement",
+            "ImportFromSamePackage",
+            "ReturnFromFinallyBlock",
+            "StringInstantiation",
+            "ThrowExceptionFromFinallyBlock",
+            "UnnecessaryGroovyImport",
+            "UnusedImport")) {
+      activeRulesBuilder.addRule(rule);
+    }
+    sensorContextTester.setActiveRules(activeRulesBuilder.build());
+
+    String report = getReportWithUpdatedSourceDir().toAbsolutePath().toString();
+    settings.setProperty(
+        CodeNarcSensor.CODENARC_REPORT_PATHS,
+        String.join(",", report, getReportWithUpdatedSourceDir().toString(), report));
+    settings.setProperty(CodeNarcSensor.CODENARC_THREADS, threads);
+
+    addFileWithFakeContent("src/org/codenarc/sample/domain/SampleDomain.groovy");
+    addFileWithFakeContent("src/org/codenarc/sample/service/NewService.groovy");
+    addFileWithFakeContent("src/org/codenarc/sample/service/OtherService.groovy");
+    addFileWithFakeContent("src/org/codenarc/sample/service/SampleService.groovy");
+
+    CodeNarcSensor sensor =
+        new CodeNarcSensor(
+            sensorContextTester.activeRules(),
+            settings.asConfig(),
+            new GroovyFileSystem(sensorContextTester.fileSystem()),
+            astProvider(),
+            new CodeNarcRuleSetFactory());
+    sensor.execute(sensorContextTester);
+
+    assertThat(sensorContextTester.allIssues()).hasSize(17);
+  }
+
   @Test
   public void should_do_nothing_when_can_not_find_report_path() throws Exception {
 
@@ -188,7 +359,10 @@ public class CodeNarcSensorTest {
     CodeNarcSensor sensor =
         new CodeNarcSensor(
             sensorContextTester.activeRules(),
-            new GroovyFileSystem(sensorContextTester.fileSystem()));
+            settings.asConfig(),
+            new GroovyFileSystem(sensorContextTester.fileSystem()),
+            astProvider(),
+            new CodeNarcRuleSetFactory());
     sensor.execute(sensorContextTester);
 
     assertThat(sensorContextTester.allIssues()).isEmpty();
@@ -209,12 +383,120 @@ public class CodeNarcSensorTest {
     CodeNarcSensor sensor =
         new CodeNarcSensor(
             sensorContextTester.activeRules(),
-            new GroovyFileSystem(sensorContextTester.fileSystem()));
+            settings.asConfig(),
+            new GroovyFileSystem(sensorContextTester.fileSystem()),
+            astProvider(),
+            new CodeNarcRuleSetFactory());
     sensor.execute(sensorContextTester);
 
     assertThat(sensorContextTester.allIssues()).hasSize(2);
   }
 
+  @Test
+  public void should_report_same_issues_in_same_order_on_several_threads() throws IOException {
+    for (int i = 0; i < 8; i++) {
+      addFileWithContent(
+          "src/sample" + i + ".groovy", "package source\nclass SourceFile" + i + " {\n}");
+    }
+
+    ActiveRulesBuilderWrapper activeRulesBuilder =
+        new ActiveRulesBuilderWrapper()
+            .addRule("org.codenarc.rule.basic.EmptyClassRule")
+            .setInternalKey("EmptyClass");
+    sensorContextTester.setActiveRules(activeRulesBuilder.build());
+
+    List<String> sequentialIssues = runCodeNarcOnComponents();
+
+    sensorContextTester = SensorContextTester.create(sensorContextTester.fileSystem().baseDir());
+    sensorContextTester.fileSystem().setWorkDir(temp.newFolder().toPath());
+    for (int i = 0; i < 8; i++) {
+      addFileWithContent(
+          "src/sample" + i + ".groovy", "package source\nclass SourceFile" + i + " {\n}");
+    }
+    sensorContextTester.setActiveRules(activeRulesBuilder.build());
+    settings.setProperty(CodeNarcSensor.CODENARC_THREADS, 4);
+    sensorContextTester.setSettings(settings);
+
+    assertThat(runCodeNarcOnComponents()).hasSize(8).isEqualTo(sequentialIssues);
+  }
+
+  @Test
+  public void should_apply_line_rules_without_ast_unless_suppressed() {
+    addFileWithContent("src/sample.groovy", "class SourceFile1 {  \n\tdef a\n}\n");
+    addFileWithContent(
+        "src/suppressed.groovy",
+        "@SuppressWarnings('TrailingWhitespace')\nclass SourceFile2 {  \n\tdef a\n}\n");
+
+    ActiveRulesBuilderWrapper activeRulesBuilder =
+        new ActiveRulesBuilderWrapper()
+            .addRule("org.codenarc.rule.formatting.TrailingWhitespaceRule")
+            .setInternalKey("TrailingWhitespace")
+            .addRule("org.codenarc.rule.convention.NoTabCharacterRule")
+            .setInternalKey("NoTabCharacter");
+    sensorContextTester.setActiveRules(activeRulesBuilder.build());
+
+    assertThat(runCodeNarcOnComponents())
+        .containsExactly(
+            "projectKey:src/sample.groovy",
+            "projectKey:src/sample.groovy",
+            "projectKey:src/suppressed.groovy");
+    assertThat(sensorContextTester.allIssues())
+        .extracting(issue -> issue.ruleKey().rule())
+        .containsExactly(
+            "org.codenarc.rule.formatting.TrailingWhitespaceRule",
+            "org.codenarc.rule.convention.NoTabCharacterRule",
+            "org.codenarc.rule.convention.NoTabCharacterRule");
+  }
+
+  @Test
+  public void should_tell_which_rules_read_lines_only() {
+    assertThat(CodeNarcSourceAnalyzer.readsLinesOnly(new TrailingWhitespaceRule())).isTrue();
+    // not an AST visitor, but reads the AST: parsed on demand
+    assertThat(CodeNarcSourceAnalyzer.readsLinesOnly(new UnusedImportRule())).isTrue();
+    assertThat(CodeNarcSourceAnalyzer.readsLinesOnly(new LineLengthRule())).isFalse();
+  }
+
+  @Test
+  public void should_apply_line_rules_next_to_ast_rules() {
+    addFileWithContent("src/sample.groovy", "import java.util.List\nclass SourceFile1 {  \n}\n");
+
+    ActiveRulesBuilderWrapper activeRulesBuilder =
+        new ActiveRulesBuilderWrapper()
+            .addRule("org.codenarc.rule.formatting.TrailingWhitespaceRule")
+            .setInternalKey("TrailingWhitespace")
+            .addRule("org.codenarc.rule.imports.UnusedImportRule")
+            .setInternalKey("UnusedImport")
+            .addRule("org.codenarc.rule.basic.EmptyClassRule")
+            .setInternalKey("EmptyClass");
+    sensorContextTester.setActiveRules(activeRulesBuilder.build());
+
+    runCodeNarcOnComponents();
+    assertThat(sensorContextTester.allIssues())
+        .extracting(issue -> issue.ruleKey().rule())
+        .containsExactlyInAnyOrder(
+            "org.codenarc.rule.formatting.TrailingWhitespaceRule",
+            "org.codenarc.rule.imports.UnusedImportRule",
+            "org.codenarc.rule.basic.EmptyClassRule");
+  }
+
+  private List<String> runCodeNarcOnComponents() {
+    CodeNarcSensor sensor =
+        new CodeNarcSensor(
+            sensorContextTester.activeRules(),
+            settings.asConfig(),
+            new GroovyFileSystem(sensorContextTester.fileSystem()),
+            astProvider(),
+            new CodeNarcRuleSetFactory());
+    sensor.execute(sensorContextTester);
+    return sensorContextTester.allIssues().stream()
+        .map(issue -> issue.primaryLocation().inputComponent().key())
+        .collect(Collectors.toList());
+  }
+
+  private GroovyAstProvider astProvider() {
+    return new GroovyAstProvider();
+  }
+
   private Path getReportWithUpdatedSourceDir() throws IOException {
     Path reportUpdated = temp.newFile().toPath();
     String newSourceDir =
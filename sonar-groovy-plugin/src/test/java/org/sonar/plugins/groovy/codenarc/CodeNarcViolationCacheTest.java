@@ -0,0 +1,188 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.codenarc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.codenarc.rule.Violation;
+import org.codenarc.rule.basic.EmptyClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.plugins.groovy.foundation.Groovy;
+
+public class CodeNarcViolationCacheTest {
+  @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+  private final EmptyClassRule rule = new EmptyClassRule();
+  private final Map<String, org.codenarc.rule.Rule> rulesByName =
+      Collections.singletonMap(rule.getName(), rule);
+
+  @Test
+  public void should_serve_unchanged_files_from_previous_analysis() throws Exception {
+    Path cacheDir = temp.newFolder().toPath();
+    InputFile inputFile = inputFile("class A {}");
+    String hash = CodeNarcViolationCache.contentHash(inputFile);
+
+    CodeNarcViolationCache cache = CodeNarcViolationCache.load(cacheDir, "module", "<ruleset/>");
+    assertThat(cache.get(inputFile, hash, rulesByName)).isNull();
+    cache.put(inputFile, hash, Collections.singletonList(violation(3, "Empty class")));
+    cache.save();
+
+    List<Violation> violations =
+        CodeNarcViolationCache.load(cacheDir, "module", "<ruleset/>")
+            .get(inputFile, hash, rulesByName);
+    assertThat(violations).hasSize(1);
+    assertThat(violations.get(0).getRule()).isSameAs(rule);
+    assertThat(violations.get(0).getLineNumber()).isEqualTo(3);
+    assertThat(violations.get(0).getMessage()).isEqualTo("Empty class");
+    assertThat(violations.get(0).getSourceLine()).isNull();
+  }
+
+  @Test
+  public void should_miss_changed_files() throws Exception {
+    Path cacheDir = temp.newFolder().toPath();
+    InputFile inputFile = inputFile("class A {}");
+    CodeNarcViolationCache cache = CodeNarcViolationCache.load(cacheDir, "module", "<ruleset/>");
+    cache.put(inputFile, CodeNarcViolationCache.contentHash(inputFile), Collections.emptyList());
+    cache.save();
+
+    InputFile changedFile = inputFile("class A { def a }");
+    assertThat(
+            CodeNarcViolationCache.load(cacheDir, "module", "<ruleset/>")
+                .get(changedFile, CodeNarcViolationCache.contentHash(changedFile), rulesByName))
+        .isNull();
+  }
+
+  @Test
+  public void should_start_empty_and_drop_old_cache_when_rule_set_changes() throws Exception {
+    Path cacheDir = temp.newFolder().toPath();
+    InputFile inputFile = inputFile("class A {}");
+    String hash = CodeNarcViolationCache.contentHash(inputFile);
+    CodeNarcViolationCache cache = CodeNarcViolationCache.load(cacheDir, "module", "<ruleset/>");
+    cache.put(inputFile, hash, Collections.emptyList());
+    cache.save();
+
+    CodeNarcViolationCache otherRuleSet =
+        CodeNarcViolationCache.load(cacheDir, "module", "<ruleset>other</ruleset>");
+    assertThat(otherRuleSet.get(inputFile, hash, rulesByName)).isNull();
+    otherRuleSet.save();
+
+    assertThat(cacheDir.toFile().listFiles()).hasSize(1);
+    assertThat(
+            CodeNarcViolationCache.load(cacheDir, "module", "<ruleset/>")
+                .get(inputFile, hash, rulesByName))
+        .isNull();
+  }
+
+  @Test
+  public void should_keep_one_cache_per_module() throws Exception {
+    Path cacheDir = temp.newFolder().toPath();
+    InputFile moduleA = inputFile("moduleA/A.groovy", "class A {}");
+    InputFile moduleB = inputFile("moduleB/B.groovy", "class B {}");
+    InputFile removed = inputFile("moduleB/Removed.groovy", "class Removed {}");
+    String hashA = CodeNarcViolationCache.contentHash(moduleA);
+    String hashB = CodeNarcViolationCache.contentHash(moduleB);
+    String hashRemoved = CodeNarcViolationCache.contentHash(removed);
+
+    // first analysis, with another quality profile for module B
+    CodeNarcViolationCache firstA = CodeNarcViolationCache.load(cacheDir, "a", "<ruleset/>");
+    firstA.put(moduleA, hashA, Collections.singletonList(violation(1, "In A")));
+    firstA.save();
+    CodeNarcViolationCache firstB = CodeNarcViolationCache.load(cacheDir, "b", "<other/>");
+    firstB.put(moduleB, hashB, Collections.singletonList(violation(1, "In B")));
+    firstB.put(removed, hashRemoved, Collections.emptyList());
+    firstB.save();
+
+    // second analysis: module B no longer has the removed file
+    CodeNarcViolationCache secondA = CodeNarcViolationCache.load(cacheDir, "a", "<ruleset/>");
+    assertThat(secondA.get(moduleA, hashA, rulesByName))
+        .extracting(Violation::getMessage)
+        .containsExactly("In A");
+    assertThat(secondA.get(moduleB, hashB, rulesByName)).isNull();
+    secondA.save();
+    CodeNarcViolationCache secondB = CodeNarcViolationCache.load(cacheDir, "b", "<other/>");
+    assertThat(secondB.get(moduleB, hashB, rulesByName))
+        .extracting(Violation::getMessage)
+        .containsExactly("In B");
+    secondB.save();
+
+    assertThat(cacheDir.toFile().listFiles()).hasSize(2);
+    assertThat(
+            CodeNarcViolationCache.load(cacheDir, "b", "<other/>")
+                .get(removed, hashRemoved, rulesByName))
+        .isNull();
+  }
+
+  @Test
+  public void should_delete_caches_unused_for_long() throws Exception {
+    Path cacheDir = temp.newFolder().toPath();
+    Path unused = Files.createFile(cacheDir.resolve("codenarc-unused.cache"));
+    Path recent = Files.createFile(cacheDir.resolve("codenarc-recent.cache"));
+    Path other = Files.createFile(cacheDir.resolve("other.cache"));
+    long longAgo =
+        System.currentTimeMillis()
+            - TimeUnit.DAYS.toMillis(CodeNarcViolationCache.MAX_UNUSED_DAYS + 1L);
+    for (Path file : Arrays.asList(unused, other)) {
+      Files.setLastModifiedTime(file, FileTime.fromMillis(longAgo));
+    }
+
+    CodeNarcViolationCache.load(cacheDir, "module", "<ruleset/>").save();
+
+    assertThat(unused).doesNotExist();
+    assertThat(recent).exists();
+    assertThat(other).exists();
+  }
+
+  private InputFile inputFile(String contents) {
+    File baseDir = temp.getRoot();
+    return TestInputFileBuilder.create("", baseDir, new File(baseDir, "A.groovy"))
+        .setLanguage(Groovy.KEY)
+        .setContents(contents)
+        .build();
+  }
+
+  private InputFile inputFile(String path, String contents) {
+    File baseDir = temp.getRoot();
+    File file = new File(baseDir, path);
+    return TestInputFileBuilder.create("", baseDir, file)
+        .setLanguage(Groovy.KEY)
+        .setContents(contents)
+        .build();
+  }
+
+  private Violation violation(int line, String message) {
+    Violation violation = new Violation();
+    violation.setRule(rule);
+    violation.setLineNumber(line);
+    violation.setMessage(message);
+    return violation;
+  }
+}
@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -20,62 +19,137 @@
 package org.sonar.plugins.groovy.codenarc;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
-import org.mockito.Mockito;
-import org.sonar.api.batch.fs.FilePredicate;
-import org.sonar.api.batch.fs.FilePredicates;
-import org.sonar.api.batch.fs.FileSystem;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
 import org.sonar.plugins.groovy.codenarc.CodeNarcXMLParser.CodeNarcViolation;
 
 public class CodeNarcXMLParserTest {
 
+  @Rule public final TemporaryFolder temp = new TemporaryFolder();
+
   @Test
   public void should_parse_report() throws Exception {
-    FileSystem fileSystem = Mockito.mock(FileSystem.class);
-    Mockito.when(fileSystem.predicates()).thenReturn(Mockito.mock(FilePredicates.class));
-    Mockito.when(fileSystem.hasFiles(nullable(FilePredicate.class))).thenReturn(true);
+    DefaultFileSystem fileSystem = new DefaultFileSystem(temp.getRoot());
+    InputFile sampleDomain =
+        addFile(fileSystem, "src/org/codenarc/sample/domain/SampleDomain.groovy");
     List<CodeNarcViolation> violations =
-        CodeNarcXMLParser.parse(
-            FileUtils.toFile(getClass().getResource("parsing/sample.xml")), fileSystem);
+        CodeNarcXMLParser.parse(reportWithSourceDir("sample.xml", "src"), fileSystem);
 
     assertThat(violations.size()).isEqualTo(17);
 
     CodeNarcViolation violation = violations.get(0);
     assertThat(violation.getRuleName()).isEqualTo("EmptyElseBlock");
-    assertThat(violation.getFilename())
-        .isEqualTo("[sourcedir]/org/codenarc/sample/domain/SampleDomain.groovy");
+    assertThat(violation.getFilename()).isEqualTo(sampleDomain.absolutePath());
+    assertThat(violation.getInputFile()).isSameAs(sampleDomain);
     assertThat(violation.getLine()).isEqualTo(24);
     assertThat(violation.getMessage()).isEqualTo("");
 
     violation = violations.get(1);
     assertThat(violation.getRuleName()).isEqualTo("EmptyIfStatement");
-    assertThat(violation.getFilename())
-        .isEqualTo("[sourcedir]/org/codenarc/sample/domain/SampleDomain.groovy");
+    assertThat(violation.getFilename()).isEqualTo(sampleDomain.absolutePath());
+    assertThat(violation.getInputFile()).isSameAs(sampleDomain);
     assertThat(violation.getLine()).isEqualTo(21);
     assertThat(violation.getMessage()).isEqualTo("");
+
+    // not part of the file system
+    violation = violations.get(violations.size() - 1);
+    assertThat(violation.getFilename())
+        .isEqualTo("org/codenarc/sample/service/SampleService.groovy");
+    assertThat(violation.getInputFile()).isNull();
   }
 
   @Test
   public void should_not_fail_if_line_number_not_specified() throws Exception {
-    FileSystem fileSystem = Mockito.mock(FileSystem.class);
-    Mockito.when(fileSystem.predicates()).thenReturn(Mockito.mock(FilePredicates.class));
-    Mockito.when(fileSystem.hasFiles(any(FilePredicate.class))).thenReturn(true);
     List<CodeNarcViolation> violations =
         CodeNarcXMLParser.parse(
             FileUtils.toFile(getClass().getResource("parsing/line-number-not-specified.xml")),
-            fileSystem);
+            new DefaultFileSystem(temp.getRoot()));
 
     assertThat(violations.size()).isEqualTo(1);
 
     CodeNarcViolation violation = violations.get(0);
     assertThat(violation.getRuleName()).isEqualTo("CyclomaticComplexity");
     assertThat(violation.getFilename()).isEqualTo("org/example/Example.groovy");
+    assertThat(violation.getInputFile()).isNull();
     assertThat(violation.getLine()).isNull();
     assertThat(violation.getMessage())
         .isEqualTo("The cyclomatic complexity for class [org.example.Example] is [27.0]");
   }
+
+  @Test
+  public void should_resolve_path_relative_to_base_dir() throws Exception {
+    DefaultFileSystem fileSystem = new DefaultFileSystem(temp.getRoot());
+    InputFile example = addFile(fileSystem, "org/example/Example.groovy");
+
+    List<CodeNarcViolation> violations =
+        CodeNarcXMLParser.parse(
+            FileUtils.toFile(getClass().getResource("parsing/line-number-not-specified.xml")),
+            fileSystem);
+
+    assertThat(violations).extracting(CodeNarcViolation::getInputFile).containsExactly(example);
+  }
+
+  @Test
+  public void should_stream_violations_with_shared_strings() throws Exception {
+    DefaultFileSystem fileSystem = new DefaultFileSystem(temp.getRoot());
+    List<CodeNarcViolation> violations = new ArrayList<>();
+
+    CodeNarcXMLParser.parse(
+        reportWithSourceDir("sample.xml", "src"),
+        new CodeNarcFileIndex(fileSystem),
+        violations::add);
+
+    assertThat(violations).hasSize(17);
+    List<CodeNarcViolation> unnecessaryImports =
+        violations.stream()
+            .filter(violation -> "UnnecessaryGroovyImport".equals(violation.getRuleName()))
+            .collect(Collectors.toList());
+    assertThat(unnecessaryImports).hasSizeGreaterThan(1);
+    assertThat(unnecessaryImports.get(1).getRuleName())
+        .isSameAs(unnecessaryImports.get(0).getRuleName());
+    assertThat(violations.get(1).getFilename()).isSameAs(violations.get(0).getFilename());
+  }
+
+  private static InputFile addFile(DefaultFileSystem fileSystem, String relativePath) {
+    InputFile inputFile =
+        TestInputFileBuilder.create(
+                "", fileSystem.baseDir(), new File(fileSystem.baseDir(), relativePath))
+            .setType(InputFile.Type.MAIN)
+            .build();
+    fileSystem.add(inputFile);
+    return inputFile;
+  }
+
+  private File reportWithSourceDir(String report, String sourceDir) throws IOException {
+    String sourceDirectory =
+        new File(temp.getRoot(), sourceDir).getAbsolutePath().replace('\\', '/');
+    String content =
+        new String(
+            Files.readAllBytes(
+                FileUtils.toFile(getClass().getResource("parsing/" + report)).toPath()),
+            StandardCharsets.UTF_8);
+    Path updated = temp.newFile().toPath();
+    Files.write(
+        updated,
+        content
+            .replaceAll(Pattern.quote("[sourcedir]"), Matcher.quoteReplacement(sourceDirectory))
+            .getBytes(StandardCharsets.UTF_8));
+    return updated.toFile();
+  }
 }
@@ -0,0 +1,166 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.foundation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import org.codenarc.source.SourceCode;
+import org.junit.Test;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.rule.ActiveRules;
+import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
+import org.sonar.api.batch.rule.internal.NewActiveRule;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.plugins.groovy.codenarc.CodeNarcRuleSetFactory;
+import org.sonar.plugins.groovy.codenarc.CodeNarcRulesDefinition;
+import org.sonar.plugins.groovy.codenarc.CodeNarcSensor;
+import org.sonar.plugins.groovy.foundation.GroovyAstProvider.Consumer;
+
+public class GroovyAstProviderTest {
+
+  private final MapSettings settings = new MapSettings();
+
+  @Test
+  public void should_share_source_until_last_consumer() {
+    GroovyAstProvider provider = provider(codeNarcRules());
+    InputFile inputFile = inputFile("class A {}");
+
+    SourceCode forMetrics = provider.take(inputFile, Consumer.METRICS);
+    assertThat(forMetrics.getAst().getClasses()).hasSize(1);
+    assertThat(provider.pendingFiles()).isEqualTo(1);
+
+    SourceCode forCodeNarc = provider.take(inputFile, Consumer.CODENARC);
+    assertThat(forCodeNarc).isSameAs(forMetrics);
+    assertThat(provider.pendingFiles()).isZero();
+  }
+
+  @Test
+  public void should_not_keep_source_released_by_other_consumer() {
+    GroovyAstProvider provider = provider(codeNarcRules());
+    InputFile inputFile = inputFile("class A {}");
+
+    provider.release(inputFile, Consumer.CODENARC);
+    assertThat(provider.pendingFiles()).isEqualTo(1);
+
+    assertThat(provider.take(inputFile, Consumer.METRICS).getAst()).isNotNull();
+    assertThat(provider.pendingFiles()).isZero();
+  }
+
+  @Test
+  public void should_drop_source_never_taken_by_finished_consumer() {
+    GroovyAstProvider provider = provider(codeNarcRules());
+    InputFile taken = inputFile("class A {}");
+    InputFile neverTaken =
+        TestInputFileBuilder.create("", "B.groovy")
+            .setLanguage(Groovy.KEY)
+            .setContents("class B {}")
+            .build();
+
+    provider.take(taken, Consumer.METRICS);
+    provider.take(neverTaken, Consumer.METRICS);
+    provider.take(taken, Consumer.CODENARC);
+    assertThat(provider.pendingFiles()).isEqualTo(1);
+
+    provider.finish(Consumer.CODENARC);
+    assertThat(provider.pendingFiles()).isZero();
+    assertThat(provider.take(neverTaken, Consumer.CODENARC).getAst()).isNotNull();
+    assertThat(provider.pendingFiles()).isZero();
+  }
+
+  @Test
+  public void should_not_keep_source_for_finished_consumer() {
+    GroovyAstProvider provider = provider(codeNarcRules());
+    provider.finish(Consumer.CODENARC);
+
+    assertThat(provider.take(inputFile("class A {}"), Consumer.METRICS)).isNotNull();
+    assertThat(provider.pendingFiles()).isZero();
+  }
+
+  @Test
+  public void should_not_keep_source_without_codenarc_analysis() {
+    GroovyAstProvider provider = provider(new ActiveRulesBuilder().build());
+    InputFile inputFile = inputFile("class A {}");
+
+    assertThat(provider.take(inputFile, Consumer.METRICS)).isNotNull();
+    assertThat(provider.pendingFiles()).isZero();
+  }
+
+  @Test
+  public void should_not_keep_source_when_importing_codenarc_reports() {
+    settings.setProperty("sonar.groovy.codenarc.reportPaths", "codenarc.xml");
+    GroovyAstProvider provider = provider(codeNarcRules());
+
+    provider.take(inputFile("class A {}"), Consumer.METRICS);
+
+    assertThat(provider.pendingFiles()).isZero();
+  }
+
+  @Test
+  public void should_return_null_if_file_cannot_be_read() {
+    GroovyAstProvider provider = provider(codeNarcRules());
+    InputFile inputFile =
+        TestInputFileBuilder.create("", "Missing.groovy").setLanguage(Groovy.KEY).build();
+
+    assertThat(provider.take(inputFile, Consumer.METRICS)).isNull();
+    assertThat(provider.pendingFiles()).isZero();
+  }
+
+  @Test
+  public void should_parse_lexed_text() {
+    GroovyAstProvider provider = provider(codeNarcRules());
+    GroovyLexedFile lexedFile = GroovyLexedFile.lex(inputFile("class A {}"));
+
+    SourceCode forMetrics = provider.take(lexedFile, Consumer.METRICS);
+    assertThat(forMetrics.getText()).isEqualTo("class A {}");
+    assertThat(provider.take(lexedFile.inputFile(), Consumer.CODENARC)).isSameAs(forMetrics);
+  }
+
+  /** A provider expecting the consumers created for the settings and the active rules. */
+  private GroovyAstProvider provider(ActiveRules activeRules) {
+    GroovyAstProvider provider = new GroovyAstProvider();
+    provider.expect(Consumer.METRICS);
+    new CodeNarcSensor(
+        activeRules,
+        settings.asConfig(),
+        new GroovyFileSystem(new DefaultFileSystem(new File("."))),
+        provider,
+        new CodeNarcRuleSetFactory());
+    return provider;
+  }
+
+  private static InputFile inputFile(String contents) {
+    return TestInputFileBuilder.create("", "A.groovy")
+        .setLanguage(Groovy.KEY)
+        .setContents(contents)
+        .build();
+  }
+
+  private static ActiveRules codeNarcRules() {
+    return new ActiveRulesBuilder()
+        .addRule(
+            new NewActiveRule.Builder()
+                .setRuleKey(RuleKey.of(CodeNarcRulesDefinition.REPOSITORY_KEY, "EmptyClass"))
+                .build())
+        .build();
+  }
+}
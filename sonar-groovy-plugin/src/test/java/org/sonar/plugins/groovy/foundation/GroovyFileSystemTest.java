@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -20,10 +19,12 @@
 package org.sonar.plugins.groovy.foundation;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.nio.file.Paths;
 import org.junit.Before;
 import org.junit.Test;
+import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.InputFile.Type;
 import org.sonar.api.batch.fs.internal.DefaultFileSystem;
 import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
@@ -55,20 +56,56 @@ public class GroovyFileSystemTest {
     assertThat(groovyFileSystem.sourceInputFileFromRelativePath(null)).isNull();
 
     fileSystem.add(TestInputFileBuilder.create("", "fake1.file").build());
-    assertThat(groovyFileSystem.sourceInputFileFromRelativePath("fake1.file")).isNull();
+    assertThat(new GroovyFileSystem(fileSystem).sourceInputFileFromRelativePath("fake1.file"))
+        .isNull();
 
     fileSystem.add(
         TestInputFileBuilder.create("", "fake2.file")
             .setType(Type.MAIN)
             .setLanguage(Groovy.KEY)
             .build());
-    assertThat(groovyFileSystem.sourceInputFileFromRelativePath("fake2.file")).isNotNull();
+    assertThat(new GroovyFileSystem(fileSystem).sourceInputFileFromRelativePath("fake2.file"))
+        .isNotNull();
 
     fileSystem.add(
         TestInputFileBuilder.create("", "org/sample/foo/fake3.file")
             .setType(Type.MAIN)
             .setLanguage(Groovy.KEY)
             .build());
-    assertThat(groovyFileSystem.sourceInputFileFromRelativePath("foo/fake3.file")).isNotNull();
+    assertThat(new GroovyFileSystem(fileSystem).sourceInputFileFromRelativePath("foo/fake3.file"))
+        .isNotNull();
+  }
+
+  @Test
+  public void inputFilesEndingWith() {
+    InputFile main = addGroovyFile("src/main/groovy/org/foo/Bar.groovy", Type.MAIN);
+    InputFile test = addGroovyFile("src/test/groovy/org/foo/Bar.groovy", Type.TEST);
+    InputFile other = addGroovyFile("src/main/groovy/org/xfoo/Bar.groovy", Type.MAIN);
+    groovyFileSystem = new GroovyFileSystem(fileSystem);
+
+    assertThat(groovyFileSystem.inputFilesEndingWith("foo/Bar.groovy"))
+        .containsExactlyInAnyOrder(main, test);
+    assertThat(groovyFileSystem.inputFilesEndingWith("org/foo/Bar.groovy", Type.TEST))
+        .containsExactly(test);
+    assertThat(groovyFileSystem.inputFilesEndingWith("Bar.groovy", Type.MAIN))
+        .containsExactlyInAnyOrder(main, other);
+    assertThat(groovyFileSystem.inputFilesEndingWith("oo/Bar.groovy")).isEmpty();
+    assertThat(groovyFileSystem.inputFilesEndingWith("")).isEmpty();
+
+    assertThat(groovyFileSystem.groovyInputFile("src/main/groovy/org/foo/Bar.groovy"))
+        .isSameAs(main);
+    assertThat(groovyFileSystem.groovyInputFile("org/foo/Bar.groovy")).isNull();
+
+    assertThat(groovyFileSystem.sourceInputFileFromRelativePath("org/xfoo/Bar.groovy"))
+        .isSameAs(other);
+    assertThatThrownBy(() -> groovyFileSystem.sourceInputFileFromRelativePath("Bar.groovy"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private InputFile addGroovyFile(String relativePath, Type type) {
+    InputFile inputFile =
+        TestInputFileBuilder.create("", relativePath).setType(type).setLanguage(Groovy.KEY).build();
+    fileSystem.add(inputFile);
+    return inputFile;
   }
 }
@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -22,6 +21,7 @@ package org.sonar.plugins.groovy.foundation;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -84,6 +84,7 @@ public class GroovyHighlighterAndTokenizerTest {
             .setLanguage(Groovy.KEY)
             .setType(Type.MAIN)
             .initMetadata(new String(Files.readAllBytes(file.toPath()), "UTF-8"))
+            .setCharset(StandardCharsets.UTF_8)
             .build();
     context.fileSystem().add(inputFile);
 
@@ -137,6 +138,7 @@ public class GroovyHighlighterAndTokenizerTest {
             .setLanguage(Groovy.KEY)
             .setType(Type.MAIN)
             .initMetadata(new String(Files.readAllBytes(file.toPath()), "UTF-8"))
+            .setCharset(StandardCharsets.UTF_8)
             .build();
     context.fileSystem().add(inputFile);
 
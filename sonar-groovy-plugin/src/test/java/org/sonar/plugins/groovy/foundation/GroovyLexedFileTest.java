@@ -0,0 +1,72 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.foundation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.codehaus.groovy.antlr.parser.GroovyTokenTypes;
+import org.junit.Test;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.plugins.groovy.TestUtils;
+
+public class GroovyLexedFileTest {
+
+  @Test
+  public void should_lex_whole_file() throws Exception {
+    GroovyLexedFile lexedFile = GroovyLexedFile.lex(inputFile("Greet.groovy"));
+
+    assertThat(lexedFile.isComplete()).isTrue();
+    assertThat(lexedFile.lines()).hasSize(13);
+    assertThat(lexedFile.tokens()).isNotEmpty();
+    assertThat(lexedFile.tokens().get(0).getType()).isEqualTo(GroovyTokenTypes.LITERAL_class);
+    assertThat(lexedFile.endLine()).isEqualTo(14);
+  }
+
+  @Test
+  public void should_keep_tokens_read_before_lexing_error() throws Exception {
+    GroovyLexedFile lexedFile = GroovyLexedFile.lex(inputFile("Error.groovy"));
+
+    assertThat(lexedFile.isComplete()).isFalse();
+    assertThat(lexedFile.tokens()).isNotEmpty();
+  }
+
+  @Test
+  public void should_return_empty_result_if_file_is_missing() {
+    InputFile inputFile =
+        TestInputFileBuilder.create("", "Greet-fake.groovy").setLanguage(Groovy.KEY).build();
+
+    GroovyLexedFile lexedFile = GroovyLexedFile.lex(inputFile);
+
+    assertThat(lexedFile.isComplete()).isFalse();
+    assertThat(lexedFile.lines()).isEmpty();
+    assertThat(lexedFile.tokens()).isEmpty();
+  }
+
+  private static InputFile inputFile(String name) throws Exception {
+    File file = TestUtils.getResource("/org/sonar/plugins/groovy/foundation/" + name);
+    return TestInputFileBuilder.create("", file.getParentFile(), file)
+        .setLanguage(Groovy.KEY)
+        .setContents(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8))
+        .build();
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.foundation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Test;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.plugins.groovy.TestUtils;
+
+public class GroovyTypeIndexTest {
+
+  @Test
+  public void should_find_declared_types() throws Exception {
+    GroovyLexedFile lexedFile = GroovyLexedFile.lex(inputFile("TypeDeclarations.groovy"));
+
+    assertThat(GroovyTypeIndex.declaredTypes(lexedFile.tokens()))
+        .containsExactly(
+            "org.example.specs.FirstSpec",
+            "org.example.specs.FirstSpec$Inner",
+            "org.example.specs.FirstSpec$Inner$Mode",
+            "org.example.specs.Service",
+            "org.example.specs.Greeter",
+            "org.example.specs.Marker");
+  }
+
+  @Test
+  public void should_lex_files_not_added_by_the_sensor() throws Exception {
+    InputFile declarations = inputFile("TypeDeclarations.groovy");
+    InputFile greet = inputFile("Greet.groovy");
+    InputFile script = inputFile("Deploy.groovy");
+    DefaultFileSystem fileSystem = new DefaultFileSystem(declarations.file().getParentFile());
+    fileSystem.add(declarations);
+    fileSystem.add(greet);
+    fileSystem.add(script);
+    GroovyTypeIndex typeIndex = new GroovyTypeIndex(new GroovyFileSystem(fileSystem));
+
+    typeIndex.add(greet, GroovyLexedFile.lex(greet));
+
+    assertThat(typeIndex.inputFile("org.example.specs.FirstSpec$Inner")).isSameAs(declarations);
+    assertThat(typeIndex.inputFile("Greet")).isSameAs(greet);
+    assertThat(typeIndex.inputFile("org.example.specs.Unknown")).isNull();
+    assertThat(typeIndex.inputFile("org.example.scripts.Deploy")).isSameAs(script);
+    assertThat(typeIndex.packages()).containsOnly("org.example.specs", "org.example.scripts", "");
+  }
+
+  @Test
+  public void should_name_scripts_after_their_file_whatever_the_suffix() {
+    InputFile script =
+        TestInputFileBuilder.create("", "scripts/Deploy.gvy")
+            .setLanguage(Groovy.KEY)
+            .setContents("package ops\n\nprintln 'deploying'\n")
+            .build();
+    DefaultFileSystem fileSystem = new DefaultFileSystem(new File("."));
+    GroovyTypeIndex typeIndex = new GroovyTypeIndex(new GroovyFileSystem(fileSystem));
+
+    typeIndex.add(script, GroovyLexedFile.lex(script));
+
+    assertThat(typeIndex.inputFile("ops.Deploy")).isSameAs(script);
+  }
+
+  private static InputFile inputFile(String name) throws Exception {
+    File file = TestUtils.getResource("/org/sonar/plugins/groovy/foundation/" + name);
+    return TestInputFileBuilder.create("", file.getParentFile(), file)
+        .setLanguage(Groovy.KEY)
+        .setContents(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8))
+        .build();
+  }
+}
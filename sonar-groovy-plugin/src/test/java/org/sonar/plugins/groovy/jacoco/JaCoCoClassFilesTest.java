@@ -0,0 +1,118 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.jacoco;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JaCoCoClassFilesTest {
+
+  @Rule public TemporaryFolder tmpDir = new TemporaryFolder();
+
+  @Test
+  public void should_find_executed_classes_and_classes_of_groovy_packages() throws IOException {
+    Path classes = tmpDir.newFolder("classes").toPath();
+    Path otherClasses = tmpDir.newFolder("other").toPath();
+    createClassFiles(
+        classes,
+        "com/foo/Greeter.class",
+        "com/foo/Greeter$1.class",
+        "com/foo/bar/Nested.class",
+        "org/other/Executed.class",
+        "org/other/NotExecuted.class",
+        "org/java/Skipped.class",
+        "Root.class");
+    createClassFiles(otherClasses, "com/foo/Greeter.class", "org/other/readme.txt");
+    JaCoCoClassFiles classFiles =
+        new JaCoCoClassFiles(
+            Arrays.asList("org/other/Executed", "org/missing/Gone"),
+            Collections.singletonList("com.foo"));
+    Map<String, File> found =
+        classFiles.find(Arrays.asList(classes.toFile(), otherClasses.toFile()));
+
+    assertThat(found)
+        .containsOnlyKeys("com/foo/Greeter", "com/foo/Greeter$1", "org/other/Executed");
+    assertThat(found.get("com/foo/Greeter"))
+        .isEqualTo(otherClasses.resolve("com/foo/Greeter.class").toFile());
+    // org/java and com/foo/bar are not walked
+    assertThat(classFiles.skippedClassFiles()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_find_classes_of_default_package() throws IOException {
+    Path classes = tmpDir.newFolder("classes").toPath();
+    createClassFiles(classes, "Root.class", "com/foo/Greeter.class");
+
+    Map<String, File> found =
+        new JaCoCoClassFiles(Collections.emptyList(), Collections.singletonList(""))
+            .find(Collections.singletonList(classes.toFile()));
+
+    assertThat(found).containsOnlyKeys("Root");
+  }
+
+  @Test
+  public void should_ignore_missing_directories() {
+    Map<String, File> found =
+        new JaCoCoClassFiles(Collections.emptyList(), Collections.singletonList("com.foo"))
+            .find(Collections.singletonList(new File(tmpDir.getRoot(), "unknown")));
+
+    assertThat(found).isEmpty();
+  }
+
+  @Test
+  public void should_filter_archives_and_their_entries() throws IOException {
+    File jar = tmpDir.newFile("app.JAR");
+    File war = tmpDir.newFile("app.war");
+    File text = tmpDir.newFile("notes.txt");
+    File classes = tmpDir.newFolder("classes");
+    JaCoCoClassFiles classFiles =
+        new JaCoCoClassFiles(
+            Collections.singletonList("org/other/Executed"), Collections.singletonList("com.foo"));
+
+    assertThat(
+            classFiles.archives(
+                Arrays.asList(jar, classes, text, war, new File(tmpDir.getRoot(), "missing.jar"))))
+        .containsExactly(jar, war);
+    assertThat(classFiles.isAnalyzedEntry("com/foo/Greeter.class")).isTrue();
+    assertThat(classFiles.isAnalyzedEntry("BOOT-INF/classes/com/foo/Greeter.class")).isTrue();
+    assertThat(classFiles.isAnalyzedEntry("WEB-INF/classes/org/other/Executed.class")).isTrue();
+    assertThat(classFiles.isAnalyzedEntry("org/other/NotExecuted.class")).isFalse();
+    assertThat(classFiles.isAnalyzedEntry("com/foo/bar/Nested.class")).isFalse();
+    assertThat(classFiles.isAnalyzedEntry("com/foo/readme.txt")).isFalse();
+    assertThat(classFiles.isAnalyzedEntry("BOOT-INF/lib/foo.jar")).isFalse();
+  }
+
+  private static void createClassFiles(Path root, String... paths) throws IOException {
+    for (String path : paths) {
+      Path file = root.resolve(path);
+      Files.createDirectories(file.getParent());
+      Files.write(file, new byte[] {0});
+    }
+  }
+}
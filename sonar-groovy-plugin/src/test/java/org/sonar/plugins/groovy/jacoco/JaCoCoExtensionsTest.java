@@ -26,6 +26,6 @@ public class JaCoCoExtensionsTest {
 
   @Test
   public void testExtensions() {
-    assertThat(JaCoCoExtensions.getExtensions().size()).isEqualTo(6);
+    assertThat(JaCoCoExtensions.getExtensions().size()).isEqualTo(9);
   }
 }
@@ -39,6 +39,7 @@ import org.sonar.api.scan.filesystem.PathResolver;
 import org.sonar.plugins.groovy.TestUtils;
 import org.sonar.plugins.groovy.foundation.Groovy;
 import org.sonar.plugins.groovy.foundation.GroovyFileSystem;
+import org.sonar.plugins.groovy.foundation.GroovyTypeIndex;
 
 public class JaCoCoItSensorTest {
 
@@ -53,12 +54,13 @@ public class JaCoCoItSensorTest {
     Files.copy(
         TestUtils.getResource(getClass(), "../JaCoCoSensor_0_7_5/jacoco-ut.exec"),
         outputDir.resolve("jacoco-it.exec"));
+    Path classesDir = Files.createDirectories(outputDir.resolve("example"));
     Files.copy(
         TestUtils.getResource(getClass(), "../Hello.class.toCopy"),
-        outputDir.resolve("Hello.class"));
+        classesDir.resolve("Hello.class"));
     Files.copy(
         TestUtils.getResource(getClass(), "../Hello$InnerClass.class.toCopy"),
-        outputDir.resolve("Hello$InnerClass.class"));
+        classesDir.resolve("Hello$InnerClass.class"));
 
     settings.setProperty(JaCoCoConfiguration.SONAR_GROOVY_BINARIES, ".");
     settings.setProperty(JaCoCoConfiguration.IT_REPORT_PATH_PROPERTY, "jacoco-it.exec");
@@ -77,6 +79,7 @@ public class JaCoCoItSensorTest {
         new JaCoCoSensor(
             configuration,
             new GroovyFileSystem(fileSystem),
+            new GroovyTypeIndex(new GroovyFileSystem(fileSystem)),
             new PathResolver(),
             settings.asConfig(),
             mock(AnalysisWarnings.class));
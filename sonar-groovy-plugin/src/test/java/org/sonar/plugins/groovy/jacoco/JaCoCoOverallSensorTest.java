@@ -49,6 +49,7 @@ import org.sonar.api.scan.filesystem.PathResolver;
 import org.sonar.plugins.groovy.TestUtils;
 import org.sonar.plugins.groovy.foundation.Groovy;
 import org.sonar.plugins.groovy.foundation.GroovyFileSystem;
+import org.sonar.plugins.groovy.foundation.GroovyTypeIndex;
 
 public class JaCoCoOverallSensorTest {
 
@@ -71,12 +72,13 @@ public class JaCoCoOverallSensorTest {
     Files.copy(
         TestUtils.getResource(getClass(), "../JaCoCoSensor_0_7_5/jacoco-ut.exec"),
         outputDir.resolve("jacoco-it.exec"));
+    Path classesDir = Files.createDirectories(outputDir.resolve("example"));
     Files.copy(
         TestUtils.getResource(getClass(), "../Hello.class.toCopy"),
-        outputDir.resolve("Hello.class"));
+        classesDir.resolve("Hello.class"));
     Files.copy(
         TestUtils.getResource(getClass(), "../Hello$InnerClass.class.toCopy"),
-        outputDir.resolve("Hello$InnerClass.class"));
+        classesDir.resolve("Hello$InnerClass.class"));
 
     settings.setProperty(JaCoCoConfiguration.SONAR_GROOVY_BINARIES, ".");
 
@@ -98,6 +100,7 @@ public class JaCoCoOverallSensorTest {
         new JaCoCoSensor(
             configuration,
             new GroovyFileSystem(context.fileSystem()),
+            new GroovyTypeIndex(new GroovyFileSystem(context.fileSystem())),
             new PathResolver(),
             settings.asConfig(),
             analysisWarnings);
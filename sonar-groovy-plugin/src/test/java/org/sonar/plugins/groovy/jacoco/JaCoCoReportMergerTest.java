@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -19,7 +18,14 @@
  */
 package org.sonar.plugins.groovy.jacoco;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -51,6 +57,48 @@ public class JaCoCoReportMergerTest {
     merge("jacoco-0.7.5.exec", "jacoco-it-0.7.5.exec");
   }
 
+  @Test
+  public void merge_in_memory_should_not_write_report() {
+    File report =
+        TestUtils.getResource(
+            "/org/sonar/plugins/groovy/jacoco/JaCoCo_incompatible_merge/jacoco-0.7.5.exec");
+    MergedExecutionData inMemory =
+        JaCoCoReportMerger.mergeReports(report, new File("missing.exec"));
+    Path overall = testFolder.getRoot().toPath().resolve("overall.exec");
+    MergedExecutionData written = JaCoCoReportMerger.mergeReports(overall, report);
+
+    assertThat(inMemory.getClassNames()).isNotEmpty();
+    assertThat(inMemory.getClassNames()).hasSameSizeAs(written.getClassNames());
+    assertThat(testFolder.getRoot().list()).containsOnly("overall.exec");
+  }
+
+  @Test
+  public void merge_on_several_threads() {
+    File report =
+        TestUtils.getResource(
+            "/org/sonar/plugins/groovy/jacoco/JaCoCo_incompatible_merge/jacoco-0.7.5.exec");
+    File itReport =
+        TestUtils.getResource(
+            "/org/sonar/plugins/groovy/jacoco/JaCoCo_incompatible_merge/jacoco-it-0.7.5.exec");
+    Path overall = testFolder.getRoot().toPath().resolve("overall.exec");
+
+    ExecutionDataStore serial = new ExecutionDataStore();
+    JaCoCoReportMerger.mergeReports(report, itReport).accept(serial);
+    MergedExecutionData parallel =
+        JaCoCoReportMerger.mergeReports(
+            overall, Arrays.asList(report, itReport, report, new File("missing.exec")), 4);
+
+    assertThat(parallel.getClassNames()).hasSameSizeAs(serial.getContents());
+    for (ExecutionData data : serial.getContents()) {
+      assertThat(parallel.get(data.getId()).getProbes()).isEqualTo(data.getProbes());
+    }
+    SessionInfoStore sessions = new SessionInfoStore();
+    ExecutionDataStore written = new ExecutionDataStore();
+    new JaCoCoReportReader(overall.toFile()).readJacocoReport(written, sessions);
+    assertThat(sessions.getInfos()).isNotEmpty();
+    assertThat(written.getContents()).hasSameSizeAs(serial.getContents());
+  }
+
   private void merge(String file1, String file2) {
     File current =
         TestUtils.getResource(
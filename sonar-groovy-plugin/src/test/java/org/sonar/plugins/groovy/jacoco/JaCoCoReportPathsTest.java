@@ -0,0 +1,93 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.jacoco;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JaCoCoReportPathsTest {
+
+  @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void should_resolve_paths_and_patterns() throws IOException {
+    Path baseDir = temp.getRoot().toPath();
+    File root = createFile(baseDir.resolve("jacoco.exec"));
+    File a = createFile(baseDir.resolve("a/build/jacoco/test.exec"));
+    File b = createFile(baseDir.resolve("b/c/build/jacoco/integrationTest.exec"));
+    createFile(baseDir.resolve("b/build/jacoco/test.txt"));
+
+    assertThat(
+            JaCoCoReportPaths.resolve(
+                baseDir.toFile(),
+                "jacoco.exec",
+                "missing.exec",
+                "",
+                "**/build/jacoco/*.exec",
+                "a\\build\\jacoco\\test.exec",
+                root.getAbsolutePath(),
+                "missing/**/*.exec"))
+        .containsExactly(root, a, b);
+    assertThat(JaCoCoReportPaths.resolve(baseDir.toFile(), "b/*/build/*.exec")).isEmpty();
+    assertThat(JaCoCoReportPaths.resolve(baseDir.toFile(), "b/*/build/**/*.exec"))
+        .containsExactly(b);
+  }
+
+  @Test
+  public void should_match_no_directory_with_double_star() throws IOException {
+    Path baseDir = temp.getRoot().toPath();
+    File root = createFile(baseDir.resolve("jacoco.exec"));
+    File build = createFile(baseDir.resolve("build/jacoco.exec"));
+    File nested = createFile(baseDir.resolve("a/build/jacoco/test.exec"));
+
+    assertThat(JaCoCoReportPaths.resolve(baseDir.toFile(), "**/*.exec"))
+        .containsExactlyInAnyOrder(root, build, nested);
+    assertThat(JaCoCoReportPaths.resolve(baseDir.toFile(), "**/build/**/*.exec"))
+        .containsExactlyInAnyOrder(build, nested);
+  }
+
+  @Test
+  public void should_list_each_report_once() throws IOException {
+    Path baseDir = temp.getRoot().toPath();
+    File report = createFile(baseDir.resolve("target/jacoco.exec"));
+    File other = createFile(baseDir.resolve("target/jacoco-it.exec"));
+
+    assertThat(
+            JaCoCoReportPaths.distinct(
+                Arrays.asList(
+                    report,
+                    baseDir.resolve("target/../target/jacoco.exec").toFile(),
+                    other,
+                    report.getAbsoluteFile())))
+        .containsExactly(report, other);
+  }
+
+  private static File createFile(Path path) throws IOException {
+    Files.createDirectories(path.getParent());
+    return Files.createFile(path).toFile();
+  }
+}
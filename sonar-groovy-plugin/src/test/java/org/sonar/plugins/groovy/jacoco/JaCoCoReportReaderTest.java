@@ -1,7 +1,6 @@
 /*
  * Sonar Groovy Plugin
  * Copyright (C) 2010-2021 SonarQube Community
- *  
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -19,6 +18,8 @@
  */
 package org.sonar.plugins.groovy.jacoco;
 
+import static org.mockito.Mockito.mock;
+
 import java.io.File;
 import java.util.Arrays;
 import java.util.Collection;
@@ -32,15 +33,11 @@ import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.plugins.groovy.TestUtils;
 
-import static org.mockito.Mockito.mock;
-
 public class JaCoCoReportReaderTest {
 
-  @Rule
-  public ExpectedException expectedException = ExpectedException.none();
+  @Rule public ExpectedException expectedException = ExpectedException.none();
 
-  @Rule
-  public TemporaryFolder testFolder = new TemporaryFolder();
+  @Rule public TemporaryFolder testFolder = new TemporaryFolder();
 
   private File dummy = new File("DummyFile.dummy");
 
@@ -52,26 +49,32 @@ public class JaCoCoReportReaderTest {
 
   @Test
   public void reading_file_no_tfound_should_do_nothing() {
-    new JaCoCoReportReader(null).readJacocoReport(mock(IExecutionDataVisitor.class), mock(ISessionInfoVisitor.class));
+    new JaCoCoReportReader(null)
+        .readJacocoReport(mock(IExecutionDataVisitor.class), mock(ISessionInfoVisitor.class));
   }
 
   @Test
   public void notExistingClassFilesShouldNotBeAnalyzed() {
-    File report = TestUtils.getResource("/org/sonar/plugins/groovy/jacoco/JaCoCo_incompatible_merge/jacoco-0.7.5.exec");
+    File report =
+        TestUtils.getResource(
+            "/org/sonar/plugins/groovy/jacoco/JaCoCo_incompatible_merge/jacoco-0.7.5.exec");
     Collection<File> classFile = Arrays.asList(dummy);
-    new JaCoCoReportReader(report).analyzeFiles(null, classFile);
+    JaCoCoReportReader.analyzeFiles(new MergedExecutionData(), classFile);
   }
 
   @Test
   public void analyzing_a_deleted_file_should_fail() throws Exception {
     File report = testFolder.newFile("jacoco.exec");
-    FileUtils.copyFile(TestUtils.getResource("/org/sonar/plugins/groovy/jacoco/JaCoCo_incompatible_merge/jacoco-0.7.5.exec"), report);
+    FileUtils.copyFile(
+        TestUtils.getResource(
+            "/org/sonar/plugins/groovy/jacoco/JaCoCo_incompatible_merge/jacoco-0.7.5.exec"),
+        report);
     JaCoCoReportReader jacocoReportReader = new JaCoCoReportReader(report);
     expectedException.expect(IllegalArgumentException.class);
     if (!report.delete()) {
       Fail.fail("report was not deleted, unable to complete test.");
     }
-    ExecutionDataVisitor edv = new ExecutionDataVisitor();
+    MergedExecutionData edv = new MergedExecutionData();
     jacocoReportReader.readJacocoReport(edv, edv);
   }
 
@@ -87,5 +90,4 @@ public class JaCoCoReportReaderTest {
     expectedException.expect(IllegalArgumentException.class);
     new JaCoCoReportReader(new File("unknown.exec"));
   }
-
 }
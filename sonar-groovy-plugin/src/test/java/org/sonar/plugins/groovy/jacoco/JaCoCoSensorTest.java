@@ -22,9 +22,13 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertThrows;
 import static org.mockito.Mockito.mock;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.jacoco.core.tools.ExecFileLoader;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -40,6 +44,7 @@ import org.sonar.api.scan.filesystem.PathResolver;
 import org.sonar.plugins.groovy.TestUtils;
 import org.sonar.plugins.groovy.foundation.Groovy;
 import org.sonar.plugins.groovy.foundation.GroovyFileSystem;
+import org.sonar.plugins.groovy.foundation.GroovyTypeIndex;
 
 public class JaCoCoSensorTest {
 
@@ -47,24 +52,28 @@ public class JaCoCoSensorTest {
 
   private MapSettings settings = TestUtils.jacocoDefaultSettings();
   private JaCoCoSensor sensor;
+  private Path baseDir;
+  private DefaultFileSystem fileSystem;
 
   private void initWithJaCoCoVersion(String jacocoVersion) throws IOException {
     Path outputDir = tmpDir.newFolder().toPath();
+    baseDir = outputDir;
 
     Files.copy(
         TestUtils.getResource(getClass(), "../" + jacocoVersion + "/jacoco-ut.exec"),
         outputDir.resolve("jacoco-ut.exec"));
+    Path classesDir = Files.createDirectories(outputDir.resolve("example"));
     Files.copy(
         TestUtils.getResource(getClass(), "../Hello.class.toCopy"),
-        outputDir.resolve("Hello.class"));
+        classesDir.resolve("Hello.class"));
     Files.copy(
         TestUtils.getResource(getClass(), "../Hello$InnerClass.class.toCopy"),
-        outputDir.resolve("Hello$InnerClass.class"));
+        classesDir.resolve("Hello$InnerClass.class"));
 
     settings.setProperty(JaCoCoConfiguration.SONAR_GROOVY_BINARIES, ".");
     settings.setProperty(JaCoCoConfiguration.REPORT_PATH_PROPERTY, "jacoco-ut.exec");
 
-    DefaultFileSystem fileSystem = new DefaultFileSystem(outputDir);
+    fileSystem = new DefaultFileSystem(outputDir);
     InputFile inputFile =
         TestInputFileBuilder.create("", "example/Hello.groovy")
             .setLanguage(Groovy.KEY)
@@ -78,6 +87,7 @@ public class JaCoCoSensorTest {
         new JaCoCoSensor(
             configuration,
             new GroovyFileSystem(fileSystem),
+            new GroovyTypeIndex(new GroovyFileSystem(fileSystem)),
             new PathResolver(),
             settings.asConfig(),
             mock(AnalysisWarnings.class));
@@ -121,6 +131,198 @@ public class JaCoCoSensorTest {
     sensor.execute(context);
 
     verifyMeasures(context);
+    assertThat(workDir.resolve(JaCoCoSensor.JACOCO_OVERALL)).doesNotExist();
+  }
+
+  @Test
+  public void testWriteOverallReport() throws IOException {
+    settings.setProperty(JaCoCoConfiguration.WRITE_OVERALL_REPORT, true);
+    initWithJaCoCoVersion("JaCoCoSensor_0_7_5");
+
+    Path workDir = tmpDir.newFolder().toPath();
+    SensorContextTester context = SensorContextTester.create(workDir);
+    context.setSettings(settings);
+    context.fileSystem().setWorkDir(workDir);
+
+    sensor.execute(context);
+
+    verifyMeasures(context);
+    MergedExecutionData overall = new MergedExecutionData();
+    new JaCoCoReportReader(workDir.resolve(JaCoCoSensor.JACOCO_OVERALL).toFile())
+        .readJacocoReport(overall, overall);
+    assertThat(overall.isEmpty()).isFalse();
+  }
+
+  @Test
+  public void testReadExecutionDataOnSeveralThreads() throws IOException {
+    settings.setProperty(JaCoCoConfiguration.JACOCO_THREADS, 4);
+    initWithJaCoCoVersion("JaCoCoSensor_0_7_5");
+
+    Path workDir = tmpDir.newFolder().toPath();
+    SensorContextTester context = SensorContextTester.create(workDir);
+    context.setSettings(settings);
+    context.fileSystem().setWorkDir(workDir);
+
+    sensor.execute(context);
+
+    verifyMeasures(context);
+  }
+
+  @Test
+  public void testReadReportsMatchingPattern() throws IOException {
+    initWithJaCoCoVersion("JaCoCoSensor_0_7_5");
+    settings.setProperty(JaCoCoConfiguration.REPORT_PATH_PROPERTY, "missing.exec");
+    settings.setProperty(JaCoCoConfiguration.REPORT_PATHS_PROPERTY, "missing/*.exec,*-ut.exec");
+    settings.setProperty(JaCoCoConfiguration.JACOCO_THREADS, 4);
+
+    Path workDir = tmpDir.newFolder().toPath();
+    SensorContextTester context = SensorContextTester.create(workDir);
+    context.setSettings(settings);
+    context.fileSystem().setWorkDir(workDir);
+
+    sensor.execute(context);
+
+    verifyMeasures(context);
+  }
+
+  @Test
+  public void testReadReportOnceWhenPatternMatchesReportPath() throws IOException {
+    settings.setProperty(JaCoCoConfiguration.WRITE_OVERALL_REPORT, true);
+    initWithJaCoCoVersion("JaCoCoSensor_0_7_5");
+    settings.setProperty(JaCoCoConfiguration.REPORT_PATHS_PROPERTY, "*.exec");
+
+    Path workDir = tmpDir.newFolder().toPath();
+    SensorContextTester context = SensorContextTester.create(workDir);
+    context.setSettings(settings);
+    context.fileSystem().setWorkDir(workDir);
+
+    sensor.execute(context);
+
+    verifyMeasures(context);
+    ExecFileLoader report = new ExecFileLoader();
+    report.load(baseDir.resolve("jacoco-ut.exec").toFile());
+    ExecFileLoader overall = new ExecFileLoader();
+    overall.load(workDir.resolve(JaCoCoSensor.JACOCO_OVERALL).toFile());
+    assertThat(overall.getSessionInfoStore().getInfos())
+        .hasSameSizeAs(report.getSessionInfoStore().getInfos());
+  }
+
+  @Test
+  public void testReadClassesFromNestedArchive() throws IOException {
+    initWithJaCoCoVersion("JaCoCoSensor_0_7_5");
+    ByteArrayOutputStream library = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(library)) {
+      addEntry(zip, "example/Hello.class", baseDir.resolve("example/Hello.class"));
+      addEntry(
+          zip, "example/Hello$InnerClass.class", baseDir.resolve("example/Hello$InnerClass.class"));
+    }
+    try (ZipOutputStream zip =
+        new ZipOutputStream(Files.newOutputStream(baseDir.resolve("app.jar")))) {
+      zip.putNextEntry(new ZipEntry("BOOT-INF/lib/hello.jar"));
+      zip.write(library.toByteArray());
+      zip.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+    }
+    settings.setProperty(JaCoCoConfiguration.SONAR_GROOVY_BINARIES, "app.jar");
+
+    Path workDir = tmpDir.newFolder().toPath();
+    SensorContextTester context = SensorContextTester.create(workDir);
+    context.setSettings(settings);
+    context.fileSystem().setWorkDir(workDir);
+
+    sensor.execute(context);
+
+    verifyMeasures(context);
+  }
+
+  @Test
+  public void testIgnoreDuplicateClassInSameArchive() throws IOException {
+    initWithJaCoCoVersion("JaCoCoSensor_0_7_5");
+    // another build of example.Hello, with a different class id
+    Path otherHello = baseDir.resolve("OtherHello.class");
+    Files.copy(TestUtils.getResource(getClass(), "../OtherHello.class.toCopy"), otherHello);
+    ByteArrayOutputStream library = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(library)) {
+      addEntry(zip, "example/Hello.class", otherHello);
+    }
+    try (ZipOutputStream zip =
+        new ZipOutputStream(Files.newOutputStream(baseDir.resolve("app.jar")))) {
+      addEntry(zip, "BOOT-INF/classes/example/Hello.class", baseDir.resolve("example/Hello.class"));
+      addEntry(
+          zip,
+          "BOOT-INF/classes/example/Hello$InnerClass.class",
+          baseDir.resolve("example/Hello$InnerClass.class"));
+      zip.putNextEntry(new ZipEntry("BOOT-INF/lib/hello.jar"));
+      zip.write(library.toByteArray());
+    }
+    settings.setProperty(JaCoCoConfiguration.SONAR_GROOVY_BINARIES, "app.jar");
+
+    Path workDir = tmpDir.newFolder().toPath();
+    SensorContextTester context = SensorContextTester.create(workDir);
+    context.setSettings(settings);
+    context.fileSystem().setWorkDir(workDir);
+
+    sensor.execute(context);
+
+    verifyMeasures(context);
+  }
+
+  @Test
+  public void testScriptNeverExecutedHasZeroCoverage() throws IOException {
+    initWithJaCoCoVersion("JaCoCoSensor_0_7_5");
+    // a script of the default package, which declares no class, compiled to Deploy.class
+    Files.copy(
+        TestUtils.getResource(getClass(), "../Deploy.class.toCopy"),
+        baseDir.resolve("Deploy.class"));
+    fileSystem.add(
+        TestInputFileBuilder.create("", "Deploy.groovy")
+            .setLanguage(Groovy.KEY)
+            .setType(Type.MAIN)
+            .setContents("println 'deploying'\nif (args) {\n  println args[0]\n}\n")
+            .build());
+
+    Path workDir = tmpDir.newFolder().toPath();
+    SensorContextTester context = SensorContextTester.create(workDir);
+    context.setSettings(settings);
+    context.fileSystem().setWorkDir(workDir);
+
+    sensor.execute(context);
+
+    verifyMeasures(context);
+    for (int line = 1; line <= 4; line++) {
+      assertThat(context.lineHits(":Deploy.groovy", line)).isZero();
+    }
+  }
+
+  @Test
+  public void testScriptWithOtherSuffixStoredOutsideItsPackage() throws IOException {
+    settings.setProperty(Groovy.FILE_SUFFIXES_KEY, ".groovy,.gvy");
+    initWithJaCoCoVersion("JaCoCoSensor_0_7_5");
+    // a script of package "ops", compiled from Deploy.gvy to ops/Deploy.class
+    Path opsDir = Files.createDirectories(baseDir.resolve("ops"));
+    Files.copy(
+        TestUtils.getResource(getClass(), "../OpsDeploy.class.toCopy"),
+        opsDir.resolve("Deploy.class"));
+    fileSystem.add(
+        TestInputFileBuilder.create("", "scripts/Deploy.gvy")
+            .setLanguage(Groovy.KEY)
+            .setType(Type.MAIN)
+            .setContents("package ops\n\nprintln 'deploying'\n")
+            .build());
+
+    Path workDir = tmpDir.newFolder().toPath();
+    SensorContextTester context = SensorContextTester.create(workDir);
+    context.setSettings(settings);
+    context.fileSystem().setWorkDir(workDir);
+
+    sensor.execute(context);
+
+    verifyMeasures(context);
+    assertThat(context.lineHits(":scripts/Deploy.gvy", 3)).isZero();
+  }
+
+  private static void addEntry(ZipOutputStream zip, String name, Path file) throws IOException {
+    zip.putNextEntry(new ZipEntry(name));
+    Files.copy(file, zip);
   }
 
   private void verifyMeasures(SensorContextTester context) {
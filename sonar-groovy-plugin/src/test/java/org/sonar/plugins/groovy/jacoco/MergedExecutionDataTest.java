@@ -0,0 +1,102 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.jacoco;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfo;
+import org.junit.Test;
+
+public class MergedExecutionDataTest {
+
+  @Test
+  public void should_merge_probes_across_sessions() {
+    MergedExecutionData executionData = new MergedExecutionData();
+    boolean[] first = new boolean[70];
+    first[0] = true;
+    first[69] = true;
+    boolean[] second = new boolean[70];
+    second[63] = true;
+    second[64] = true;
+
+    executionData.visitSessionInfo(new SessionInfo("foo", 1L, 1L));
+    executionData.visitClassExecution(new ExecutionData(1, "Foo", first));
+    executionData.visitClassExecution(new ExecutionData(2, "Bar", new boolean[] {false}));
+    executionData.visitSessionInfo(new SessionInfo("bar", 2L, 2L));
+    executionData.visitClassExecution(new ExecutionData(1, "Foo", second));
+
+    assertThat(executionData.getClassNames()).containsOnly("Foo", "Bar");
+    boolean[] expected = new boolean[70];
+    expected[0] = true;
+    expected[63] = true;
+    expected[64] = true;
+    expected[69] = true;
+    assertThat(executionData.get(1).getName()).isEqualTo("Foo");
+    assertThat(executionData.get(1).getProbes()).isEqualTo(expected);
+    assertThat(executionData.get(2).getProbes()).isEqualTo(new boolean[] {false});
+    assertThat(executionData.get(3)).isNull();
+  }
+
+  @Test
+  public void should_fail_on_incompatible_probes() {
+    MergedExecutionData executionData = new MergedExecutionData();
+    executionData.visitClassExecution(new ExecutionData(1, "Foo", new boolean[2]));
+
+    assertThrows(
+        IllegalStateException.class,
+        () -> executionData.visitClassExecution(new ExecutionData(1, "Foo", new boolean[3])));
+    assertThrows(
+        IllegalStateException.class,
+        () -> executionData.visitClassExecution(new ExecutionData(1, "Bar", new boolean[2])));
+  }
+
+  @Test
+  public void should_merge_other_execution_data() {
+    MergedExecutionData executionData = new MergedExecutionData();
+    executionData.visitClassExecution(
+        new ExecutionData(1, "Foo", new boolean[] {true, false, false}));
+    MergedExecutionData other = new MergedExecutionData();
+    other.visitClassExecution(new ExecutionData(1, "Foo", new boolean[] {false, false, true}));
+    other.visitClassExecution(new ExecutionData(2, "Bar", new boolean[] {true}));
+
+    executionData.merge(other);
+
+    assertThat(executionData.get(1).getProbes()).isEqualTo(new boolean[] {true, false, true});
+    assertThat(executionData.get(2).getProbes()).isEqualTo(new boolean[] {true});
+  }
+
+  @Test
+  public void should_expand_one_class_at_a_time() {
+    MergedExecutionData executionData = new MergedExecutionData();
+    executionData.visitClassExecution(new ExecutionData(1, "Foo", new boolean[] {true, false}));
+    executionData.visitClassExecution(new ExecutionData(2, "Bar", new boolean[] {true}));
+
+    ExecutionDataStore store = executionData.storeOf(1);
+    assertThat(store.getContents()).extracting(ExecutionData::getName).containsExactly("Foo");
+    assertThat(store.get(1).getProbes()).isEqualTo(new boolean[] {true, false});
+    assertThat(executionData.storeOf(3).getContents()).isEmpty();
+
+    ExecutionDataStore all = new ExecutionDataStore();
+    executionData.accept(all);
+    assertThat(all.getContents()).extracting(ExecutionData::getName).containsOnly("Foo", "Bar");
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.codenarc.source.SourceString;
+import org.junit.Test;
+
+public class GroovyMetricsTest {
+
+  @Test
+  public void script() {
+    GroovyMetrics metrics =
+        compute("println 'hi'\nif (a) { b() } else if (c) { d() } else { e() }");
+
+    assertThat(metrics.classes()).isEqualTo(1);
+    assertThat(metrics.functions()).isEqualTo(1);
+    assertThat(metrics.complexity()).isEqualTo(3);
+    assertThat(metrics.cognitiveComplexity()).isEqualTo(3);
+  }
+
+  @Test
+  public void abstract_methods_and_interfaces_have_no_complexity() {
+    GroovyMetrics metrics =
+        compute(
+            "interface I { void f() }\n"
+                + "abstract class A implements I { abstract void g()\n def h(x) { x?.y?.z() ?: 3 } }");
+
+    assertThat(metrics.classes()).isEqualTo(2);
+    assertThat(metrics.functions()).isEqualTo(1);
+    // 1 + Elvis + two safe navigations, counted twice as GMetrics visits the Elvis operand twice
+    assertThat(metrics.complexity()).isEqualTo(6);
+    assertThat(metrics.cognitiveComplexity()).isZero();
+  }
+
+  @Test
+  public void constructors_and_closure_fields_are_functions() {
+    GroovyMetrics metrics =
+        compute("class C {\n C(a) { if (a && b || c) {} }\n def cl = { x -> x ? 1 : 2 }\n}");
+
+    assertThat(metrics.functions()).isEqualTo(2);
+    assertThat(metrics.complexity()).isEqualTo(6);
+    // if + two operator sequences, then the ternary at the top level of the closure
+    assertThat(metrics.cognitiveComplexity()).isEqualTo(4);
+  }
+
+  @Test
+  public void switch_counts_each_case() {
+    GroovyMetrics metrics =
+        compute(
+            "def f(x) { switch (x) { case 1: return 1; case 2: return 2; default: return 3 } }");
+
+    assertThat(metrics.complexity()).isEqualTo(1 + 1 + 2);
+    assertThat(metrics.cognitiveComplexity()).isEqualTo(1);
+  }
+
+  @Test
+  public void cognitive_complexity_grows_with_nesting() {
+    GroovyMetrics metrics =
+        compute(
+            "class C { def q() {\n"
+                + "  outer: for (x in y) {\n"
+                + "    while (z) { if (a && b && c || d) { continue outer } }\n"
+                + "  }\n"
+                + "  [1, 2].each { try { f(it) } catch (e) { g() } }\n"
+                + "} }");
+
+    // for (1) + while (2) + if (3) + two operator sequences (2) + labelled continue (1)
+    // + catch inside a closure (2)
+    assertThat(metrics.cognitiveComplexity()).isEqualTo(11);
+    assertThat(metrics.complexity()).isEqualTo(1 + 1 + 1 + 1 + 3 + 1);
+  }
+
+  private static GroovyMetrics compute(String source) {
+    return GroovyMetrics.compute(new SourceString(source).getAst());
+  }
+}
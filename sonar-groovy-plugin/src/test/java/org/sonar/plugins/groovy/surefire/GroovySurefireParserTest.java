@@ -27,11 +27,17 @@ import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.InputFile.Type;
@@ -39,12 +45,18 @@ import org.sonar.api.batch.fs.internal.DefaultFileSystem;
 import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.batch.sensor.measure.Measure;
 import org.sonar.api.config.internal.MapSettings;
 import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Metric;
 import org.sonar.plugins.groovy.foundation.Groovy;
+import org.sonar.plugins.groovy.foundation.GroovyFileSystem;
+import org.sonar.plugins.groovy.foundation.GroovyTypeIndex;
 
 public class GroovySurefireParserTest {
 
+  @Rule public TemporaryFolder temp = new TemporaryFolder();
+
   private GroovySurefireParser parser;
   private Groovy groovy;
 
@@ -56,7 +68,10 @@ public class GroovySurefireParserTest {
     settings.setProperty(Groovy.FILE_SUFFIXES_KEY, ".groovy,grvy");
     groovy = new Groovy(settings.asConfig());
 
-    parser = spy(new GroovySurefireParser(groovy, fs));
+    parser =
+        spy(
+            new GroovySurefireParser(
+                groovy, new GroovyFileSystem(fs), new GroovyTypeIndex(new GroovyFileSystem(fs))));
 
     doAnswer(
             invocation ->
@@ -88,29 +103,29 @@ public class GroovySurefireParserTest {
 
   @Test
   public void shouldAggregateReports() {
-    SensorContextTester context = SensorContextTester.create(Paths.get("."));
+    SensorContextTester context = newContext();
 
     parser.collect(context, getDir("multipleReports"));
 
     // Only 5 tests measures should be stored, no more: the TESTS-AllTests.xml must not be read as
     // there's 1 file result per unit test (SONAR-2841).
-    assertThat(context.measures(":ch.hortis.sonar.mvn.mc.MetricsCollectorRegistryTest")).hasSize(5);
-    assertThat(context.measures(":ch.hortis.sonar.mvn.mc.CloverCollectorTest")).hasSize(5);
-    assertThat(context.measures(":ch.hortis.sonar.mvn.mc.CheckstyleCollectorTest")).hasSize(5);
-    assertThat(context.measures(":ch.hortis.sonar.mvn.SonarMojoTest")).hasSize(5);
-    assertThat(context.measures(":ch.hortis.sonar.mvn.mc.JDependsCollectorTest")).hasSize(5);
-    assertThat(context.measures(":ch.hortis.sonar.mvn.mc.JavaNCSSCollectorTest")).hasSize(5);
+    assertThat(context.measures(":ch.hortis.sonar.mvn.mc.MetricsCollectorRegistryTest")).hasSize(9);
+    assertThat(context.measures(":ch.hortis.sonar.mvn.mc.CloverCollectorTest")).hasSize(9);
+    assertThat(context.measures(":ch.hortis.sonar.mvn.mc.CheckstyleCollectorTest")).hasSize(9);
+    assertThat(context.measures(":ch.hortis.sonar.mvn.SonarMojoTest")).hasSize(9);
+    assertThat(context.measures(":ch.hortis.sonar.mvn.mc.JDependsCollectorTest")).hasSize(9);
+    assertThat(context.measures(":ch.hortis.sonar.mvn.mc.JavaNCSSCollectorTest")).hasSize(9);
   }
 
   // SONAR-2841: if there's only a test suite report, then it should be read.
   @Test
   public void shouldUseTestSuiteReportIfAlone() {
-    SensorContextTester context = SensorContextTester.create(Paths.get("."));
+    SensorContextTester context = newContext();
 
     parser.collect(context, getDir("onlyTestSuiteReport"));
 
-    assertThat(context.measures(":org.sonar.SecondTest")).hasSize(5);
-    assertThat(context.measures(":org.sonar.JavaNCSSCollectorTest")).hasSize(5);
+    assertThat(context.measures(":org.sonar.SecondTest")).hasSize(9);
+    assertThat(context.measures(":org.sonar.JavaNCSSCollectorTest")).hasSize(9);
   }
 
   /** See http://jira.codehaus.org/browse/SONAR-2371 */
@@ -131,7 +146,7 @@ public class GroovySurefireParserTest {
 
   @Test
   public void shouldMergeInnerClasses() {
-    SensorContextTester context = SensorContextTester.create(Paths.get("."));
+    SensorContextTester context = newContext();
     parser.collect(context, getDir("innerClasses"));
 
     assertThat(
@@ -156,7 +171,7 @@ public class GroovySurefireParserTest {
 
   @Test
   public void shouldMergeNestedInnerClasses() {
-    SensorContextTester context = SensorContextTester.create(Paths.get("."));
+    SensorContextTester context = newContext();
     parser.collect(context, getDir("nestedInnerClasses"));
 
     assertThat(
@@ -166,9 +181,123 @@ public class GroovySurefireParserTest {
         .isEqualTo(3);
   }
 
+  @Test
+  public void shouldParseReportsOnSeveralThreads() {
+    SensorContextTester sequential = newContext();
+    parser.collect(sequential, getDir("multipleReports"));
+    SensorContextTester parallel = newContext();
+    parser.collect(
+        parallel, getDir("multipleReports"), new GroovySurefireParser.Options().setThreads(4));
+
+    for (String test :
+        Arrays.asList(
+            ":ch.hortis.sonar.mvn.mc.MetricsCollectorRegistryTest",
+            ":ch.hortis.sonar.mvn.mc.CloverCollectorTest",
+            ":ch.hortis.sonar.mvn.SonarMojoTest")) {
+      assertThat(parallel.measures(test)).hasSize(9);
+      assertThat(parallel.measure(test, CoreMetrics.TESTS).value())
+          .isEqualTo(sequential.measure(test, CoreMetrics.TESTS).value());
+      assertThat(parallel.measure(test, CoreMetrics.TEST_EXECUTION_TIME).value())
+          .isEqualTo(sequential.measure(test, CoreMetrics.TEST_EXECUTION_TIME).value());
+    }
+  }
+
+  @Test
+  public void shouldMergeNestedInnerClassesParsedOnSeveralThreads() {
+    SensorContextTester context = newContext();
+    parser.collect(
+        context, getDir("nestedInnerClasses"), new GroovySurefireParser.Options().setThreads(2));
+
+    assertThat(
+            context
+                .measure(":org.sonar.plugins.surefire.NestedInnerTest", CoreMetrics.TESTS)
+                .value())
+        .isEqualTo(3);
+  }
+
+  @Test
+  public void shouldComputeSameMeasuresWhenAggregateOnly() {
+    for (String dir : Arrays.asList("innerClasses", "negativeTestTime", "multipleReports")) {
+      SensorContextTester detailed = newContext();
+      parser.collect(detailed, getDir(dir));
+      SensorContextTester aggregated = newContext();
+      parser.collect(
+          aggregated,
+          getDir(dir),
+          new GroovySurefireParser.Options().setThreads(2).setAggregateOnly(true));
+
+      for (String component :
+          Arrays.asList(
+              ":org.apache.commons.collections.bidimap.AbstractTestBidiMap",
+              ":java.Foo",
+              ":ch.hortis.sonar.mvn.SonarMojoTest")) {
+        for (Metric<?> metric :
+            Arrays.<Metric<?>>asList(
+                CoreMetrics.TESTS,
+                CoreMetrics.SKIPPED_TESTS,
+                CoreMetrics.TEST_ERRORS,
+                CoreMetrics.TEST_FAILURES,
+                CoreMetrics.TEST_EXECUTION_TIME,
+                GroovySurefireMetrics.SLOW_TESTS,
+                GroovySurefireMetrics.TEST_DURATION_P50,
+                GroovySurefireMetrics.TEST_DURATION_P95,
+                GroovySurefireMetrics.TEST_DURATION_MAX)) {
+          assertThat(value(aggregated, component, metric))
+              .as(dir + " " + component + " " + metric.key())
+              .isEqualTo(value(detailed, component, metric));
+        }
+      }
+    }
+  }
+
+  private static Object value(SensorContextTester context, String component, Metric<?> metric) {
+    Measure<?> measure = context.measure(component, metric.key());
+    return measure == null ? null : measure.value();
+  }
+
+  @Test
+  public void shouldComputeTestDurationStatistics() throws IOException {
+    SensorContextTester context = newContext();
+    parser.collect(
+        context,
+        getDir("slowTests"),
+        new GroovySurefireParser.Options()
+            .setSlowTestThresholdMilliseconds(1000)
+            .setSlowestTests(2));
+
+    // skipped tests are excluded from the statistics, the inner class is merged in its parent and
+    // percentiles are exact to about 3%
+    assertThat(context.measure(":org.foo.SlowTest", GroovySurefireMetrics.SLOW_TESTS).value())
+        .isEqualTo(2);
+    assertThat(
+            context.measure(":org.foo.SlowTest", GroovySurefireMetrics.TEST_DURATION_P50).value())
+        .isBetween(150L, 151L);
+    assertThat(
+            context.measure(":org.foo.SlowTest", GroovySurefireMetrics.TEST_DURATION_P95).value())
+        .isEqualTo(8000L);
+    assertThat(
+            context.measure(":org.foo.SlowTest", GroovySurefireMetrics.TEST_DURATION_MAX).value())
+        .isEqualTo(8000L);
+
+    String report =
+        new String(
+            Files.readAllBytes(
+                temp.getRoot().toPath().resolve(GroovySurefireParser.DURATION_REPORT_FILE_NAME)),
+            StandardCharsets.UTF_8);
+    assertThat(report)
+        .contains("\"slowTestThresholdMs\":1000")
+        .contains("\"slowTests\":2")
+        .contains("\"name\":\"slowest\",\"durationMs\":8000")
+        .contains("\"name\":\"slow\",\"durationMs\":1200")
+        .doesNotContain("\"medium\"")
+        .doesNotContain("\"ignored\"")
+        .contains("\"p95Ms\":8000");
+    assertThat(report.indexOf("slowest")).isLessThan(report.indexOf("\"slow\""));
+  }
+
   @Test
   public void shouldNotCountNegativeTests() {
-    SensorContextTester context = SensorContextTester.create(Paths.get("."));
+    SensorContextTester context = newContext();
     parser.collect(context, getDir("negativeTestTime"));
     // Test times : -1.120, 0.644, 0.015 -> computed time : 0.659, ignore negative time.
 
@@ -188,7 +317,8 @@ public class GroovySurefireParserTest {
 
   @Test
   public void shouldGenerateCorrectPredicate() {
-    DefaultFileSystem fs = new DefaultFileSystem(Paths.get("."));
+    DefaultFileSystem fs =
+        new DefaultFileSystem(Paths.get(".")).setWorkDir(temp.getRoot().toPath());
     InputFile inputFile =
         TestInputFileBuilder.create("", "src/test/org/sonar/JavaNCSSCollectorTest.groovy")
             .setLanguage(Groovy.KEY)
@@ -196,9 +326,11 @@ public class GroovySurefireParserTest {
             .build();
     fs.add(inputFile);
 
-    parser = new GroovySurefireParser(groovy, fs);
+    parser =
+        new GroovySurefireParser(
+            groovy, new GroovyFileSystem(fs), new GroovyTypeIndex(new GroovyFileSystem(fs)));
 
-    SensorContextTester context = SensorContextTester.create(Paths.get("."));
+    SensorContextTester context = newContext();
     context.setFileSystem(fs);
     parser.collect(context, getDir("onlyTestSuiteReport"));
 
@@ -208,4 +340,10 @@ public class GroovySurefireParserTest {
                 .value())
         .isEqualTo(11);
   }
+
+  private SensorContextTester newContext() {
+    SensorContextTester context = SensorContextTester.create(Paths.get("."));
+    context.fileSystem().setWorkDir(temp.getRoot().toPath());
+    return context;
+  }
 }
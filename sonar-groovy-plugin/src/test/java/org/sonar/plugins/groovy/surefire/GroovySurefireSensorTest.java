@@ -20,16 +20,22 @@ package org.sonar.plugins.groovy.surefire;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 
 import java.io.File;
 import java.net.URISyntaxException;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.List;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.DefaultFileSystem;
 import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
@@ -40,13 +46,19 @@ import org.sonar.api.config.internal.MapSettings;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.scan.filesystem.PathResolver;
 import org.sonar.plugins.groovy.foundation.Groovy;
+import org.sonar.plugins.groovy.foundation.GroovyFileSystem;
+import org.sonar.plugins.groovy.foundation.GroovyTypeIndex;
 import org.sonar.plugins.groovy.surefire.api.SurefireUtils;
+import org.sonar.plugins.groovy.surefire.data.UnitTestClassReport;
 
 /** Created by iwarapter */
 public class GroovySurefireSensorTest {
 
+  @Rule public TemporaryFolder temp = new TemporaryFolder();
+
   private DefaultFileSystem fs = new DefaultFileSystem(Paths.get("."));
   private GroovySurefireSensor surefireSensor;
+  private GroovySurefireParser parser;
   private PathResolver pathResolver = new PathResolver();
   private Groovy groovy;
 
@@ -61,7 +73,10 @@ public class GroovySurefireSensorTest {
     settings.setProperty(Groovy.FILE_SUFFIXES_KEY, ".groovy,grvy");
     groovy = new Groovy(settings.asConfig());
 
-    GroovySurefireParser parser = spy(new GroovySurefireParser(groovy, fs));
+    parser =
+        spy(
+            new GroovySurefireParser(
+                groovy, new GroovyFileSystem(fs), new GroovyTypeIndex(new GroovyFileSystem(fs))));
 
     doAnswer(invocation -> inputFile((String) invocation.getArguments()[0]))
         .when(parser)
@@ -90,7 +105,7 @@ public class GroovySurefireSensorTest {
 
   @Test
   public void shouldHandleTestSuiteDetails() throws URISyntaxException {
-    SensorContextTester context = SensorContextTester.create(Paths.get("."));
+    SensorContextTester context = newContext();
     context
         .fileSystem()
         .add(inputFile("org.sonar.core.ExtensionsFinderTest"))
@@ -105,10 +120,10 @@ public class GroovySurefireSensorTest {
                         "/org/sonar/plugins/groovy/surefire/SurefireSensorTest/shouldHandleTestSuiteDetails/")
                     .toURI())));
 
-    // 3 classes, 5 measures by class
-    assertThat(context.measures(":org.sonar.core.ExtensionsFinderTest")).hasSize(5);
-    assertThat(context.measures(":org.sonar.core.ExtensionsFinderTest2")).hasSize(5);
-    assertThat(context.measures(":org.sonar.core.ExtensionsFinderTest3")).hasSize(5);
+    // 3 classes, 9 measures by class
+    assertThat(context.measures(":org.sonar.core.ExtensionsFinderTest")).hasSize(9);
+    assertThat(context.measures(":org.sonar.core.ExtensionsFinderTest2")).hasSize(9);
+    assertThat(context.measures(":org.sonar.core.ExtensionsFinderTest3")).hasSize(9);
 
     assertThat(context.measure(":org.sonar.core.ExtensionsFinderTest", CoreMetrics.TESTS).value())
         .isEqualTo(4);
@@ -187,7 +202,7 @@ public class GroovySurefireSensorTest {
   @Test
   public void shouldSaveErrorsAndFailuresInXML() throws URISyntaxException {
 
-    SensorContextTester context = SensorContextTester.create(Paths.get("."));
+    SensorContextTester context = newContext();
     context
         .fileSystem()
         .add(inputFile("org.sonar.core.ExtensionsFinderTest"))
@@ -211,12 +226,80 @@ public class GroovySurefireSensorTest {
         .isEqualTo(1);
     assertThat(context.measure(":org.sonar.core.ExtensionsFinderTest", CoreMetrics.TESTS).value())
         .isEqualTo(7);
-    assertThat(context.measures(":org.sonar.core.ExtensionsFinderTest")).hasSize(5);
+    assertThat(context.measures(":org.sonar.core.ExtensionsFinderTest")).hasSize(9);
+  }
+
+  @Test
+  public void shouldUseSurefireSettings() throws URISyntaxException {
+    MapSettings settings = new MapSettings();
+    settings.setProperty(GroovySurefireSensor.SUREFIRE_THREADS, 2);
+    settings.setProperty(GroovySurefireSensor.SUREFIRE_AGGREGATE_ONLY, true);
+    settings.setProperty(GroovySurefireSensor.SUREFIRE_SLOW_TEST_THRESHOLD, 10);
+    settings.setProperty(GroovySurefireSensor.SUREFIRE_SLOWEST_TESTS, 1);
+    GroovySurefireSensor localSensor =
+        new GroovySurefireSensor(parser, settings.asConfig(), fs, pathResolver);
+    SensorContextTester context = newContext();
+    context.fileSystem().add(inputFile("org.sonar.core.ExtensionsFinderTest"));
+
+    localSensor.collect(
+        context,
+        Collections.singletonList(
+            new File(
+                getClass()
+                    .getResource(
+                        "/org/sonar/plugins/groovy/surefire/SurefireSensorTest/shouldSaveErrorsAndFailuresInXML/")
+                    .toURI())));
+
+    assertThat(context.measure(":org.sonar.core.ExtensionsFinderTest", CoreMetrics.TESTS).value())
+        .isEqualTo(7);
+    assertThat(
+            context
+                .measure(":org.sonar.core.ExtensionsFinderTest", GroovySurefireMetrics.SLOW_TESTS)
+                .value())
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void shouldKeepNoTestResultWhenAggregateOnly() throws URISyntaxException {
+    MapSettings settings = new MapSettings();
+    settings.setProperty(GroovySurefireSensor.SUREFIRE_AGGREGATE_ONLY, true);
+    GroovySurefireSensor localSensor =
+        new GroovySurefireSensor(parser, settings.asConfig(), fs, pathResolver);
+    SensorContextTester context = newContext();
+    context.fileSystem().add(inputFile("org.sonar.core.ExtensionsFinderTest"));
+    List<File> reportsDirs =
+        Collections.singletonList(
+            new File(
+                getClass()
+                    .getResource(
+                        "/org/sonar/plugins/groovy/surefire/SurefireSensorTest/shouldSaveErrorsAndFailuresInXML/")
+                    .toURI()));
+
+    localSensor.collect(context, reportsDirs);
+
+    ArgumentCaptor<GroovySurefireParser.Options> options =
+        ArgumentCaptor.forClass(GroovySurefireParser.Options.class);
+    verify(parser).collect(eq(context), eq(reportsDirs), options.capture());
+    List<File> reports =
+        Collections.singletonList(
+            new File(reportsDirs.get(0), "TEST-org.sonar.core.ExtensionsFinderTest.xml"));
+    UnitTestClassReport report =
+        GroovySurefireParser.parseFiles(reports, options.getValue())
+            .get("org.sonar.core.ExtensionsFinderTest");
+    assertThat(report.getTests()).isEqualTo(8);
+    assertThat(report.getResults()).isEmpty();
+    assertThat(
+            GroovySurefireParser.parseFiles(reports, new GroovySurefireParser.Options())
+                .get("org.sonar.core.ExtensionsFinderTest")
+                .getResults())
+        .hasSize(8);
+    assertThat(context.measure(":org.sonar.core.ExtensionsFinderTest", CoreMetrics.TESTS).value())
+        .isEqualTo(7);
   }
 
   @Test
   public void shouldManageClassesWithDefaultPackage() throws URISyntaxException {
-    SensorContextTester context = SensorContextTester.create(Paths.get("."));
+    SensorContextTester context = newContext();
     context.fileSystem().add(inputFile("NoPackagesTest"));
 
     surefireSensor.collect(
@@ -233,7 +316,7 @@ public class GroovySurefireSensorTest {
 
   @Test
   public void successRatioIsZeroWhenAllTestsFail() throws URISyntaxException {
-    SensorContextTester context = SensorContextTester.create(Paths.get("."));
+    SensorContextTester context = newContext();
     context.fileSystem().add(inputFile("org.sonar.Foo"));
 
     surefireSensor.collect(
@@ -252,7 +335,7 @@ public class GroovySurefireSensorTest {
 
   @Test
   public void measuresShouldNotIncludeSkippedTests() throws URISyntaxException {
-    SensorContextTester context = SensorContextTester.create(Paths.get("."));
+    SensorContextTester context = newContext();
     context.fileSystem().add(inputFile("org.sonar.Foo"));
 
     surefireSensor.collect(
@@ -272,7 +355,7 @@ public class GroovySurefireSensorTest {
 
   @Test
   public void noSuccessRatioIfNoTests() throws URISyntaxException {
-    SensorContextTester context = SensorContextTester.create(Paths.get("."));
+    SensorContextTester context = newContext();
     context.fileSystem().add(inputFile("org.sonar.Foo"));
 
     surefireSensor.collect(
@@ -292,7 +375,7 @@ public class GroovySurefireSensorTest {
 
   @Test
   public void ignoreSuiteAsInnerClass() throws URISyntaxException {
-    SensorContextTester context = SensorContextTester.create(Paths.get("."));
+    SensorContextTester context = newContext();
     context.fileSystem().add(inputFile("org.sonar.Foo"));
 
     surefireSensor.collect(
@@ -314,4 +397,10 @@ public class GroovySurefireSensorTest {
                 .value())
         .isEqualTo(1);
   }
+
+  private SensorContextTester newContext() {
+    SensorContextTester context = SensorContextTester.create(Paths.get("."));
+    context.fileSystem().setWorkDir(temp.getRoot().toPath());
+    return context;
+  }
 }
@@ -0,0 +1,75 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.surefire.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class DurationHistogramTest {
+
+  @Test
+  public void shouldComputeExactPercentilesOfSmallDurations() {
+    DurationHistogram histogram = new DurationHistogram();
+    for (long duration = 1; duration <= 20; duration++) {
+      histogram.record(duration);
+    }
+    histogram.record(-5);
+
+    assertThat(histogram.count()).isEqualTo(20);
+    assertThat(histogram.percentile(0.5)).isEqualTo(10);
+    assertThat(histogram.percentile(0.95)).isEqualTo(19);
+    assertThat(histogram.max()).isEqualTo(20);
+  }
+
+  @Test
+  public void shouldBoundErrorOfLargeDurations() {
+    DurationHistogram histogram = new DurationHistogram();
+    for (long duration = 1000; duration <= 100_000; duration += 1000) {
+      histogram.record(duration);
+    }
+
+    assertThat(histogram.percentile(0.5)).isBetween(50_000L, 51_600L);
+    assertThat(histogram.percentile(0.95)).isBetween(95_000L, 98_000L);
+    assertThat(histogram.percentile(0.999)).isEqualTo(100_000);
+  }
+
+  @Test
+  public void shouldMapValuesToContiguousBuckets() {
+    for (long value = 0; value < 1 << 20; value++) {
+      int bucket = DurationHistogram.bucket(value);
+      assertThat(DurationHistogram.highestValue(bucket)).isGreaterThanOrEqualTo(value);
+      assertThat(bucket == 0 || DurationHistogram.highestValue(bucket - 1) < value).isTrue();
+    }
+    assertThat(DurationHistogram.bucket(Long.MAX_VALUE)).isPositive();
+  }
+
+  @Test
+  public void shouldMerge() {
+    DurationHistogram histogram = new DurationHistogram().record(10).record(2000);
+    DurationHistogram other = new DurationHistogram().record(5).record(70_000);
+
+    histogram.merge(other);
+
+    assertThat(histogram.count()).isEqualTo(4);
+    assertThat(histogram.max()).isEqualTo(70_000);
+    assertThat(histogram.percentile(0.25)).isEqualTo(5);
+    assertThat(new DurationHistogram().percentile(0.5)).isZero();
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.surefire.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import org.junit.Test;
+import org.sonar.plugins.groovy.surefire.data.SlowestTests.SlowTest;
+
+public class SlowestTestsTest {
+
+  @Test
+  public void shouldKeepSlowestTests() {
+    SlowestTests slowestTests =
+        new SlowestTests(2).add("A", "a", 10).add("B", "b", 30).add("C", "c", 0).add("D", "d", 20);
+
+    assertThat(slowestTests.accepts(15)).isFalse();
+    assertThat(slowestTests.accepts(25)).isTrue();
+    assertThat(slowestTests.getTests())
+        .extracting(SlowTest::getClassName, SlowTest::getName, SlowTest::getDurationMilliseconds)
+        .containsExactly(tuple("B", "b", 30L), tuple("D", "d", 20L));
+  }
+
+  @Test
+  public void shouldMerge() {
+    SlowestTests slowestTests = new SlowestTests(3).add("A", "a", 10).add("B", "b", 30);
+    SlowestTests other = new SlowestTests(3).add("C", "c", 40).add("D", "d", 5);
+
+    assertThat(slowestTests.merge(other).getTests())
+        .extracting(SlowTest::getName)
+        .containsExactly("c", "b", "a");
+  }
+
+  @Test
+  public void shouldKeepNothingWithoutLimit() {
+    assertThat(new SlowestTests(0).add("A", "a", 10).getTests()).isEmpty();
+  }
+}
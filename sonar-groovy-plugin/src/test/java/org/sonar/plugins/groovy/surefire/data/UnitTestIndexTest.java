@@ -0,0 +1,59 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.surefire.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class UnitTestIndexTest {
+
+  @Test
+  public void shouldMergeIndexes() {
+    UnitTestIndex index = new UnitTestIndex();
+    index.index("FooTest").add(result(UnitTestResult.STATUS_OK, 10));
+    UnitTestIndex other = new UnitTestIndex();
+    other.index("FooTest").add(result(UnitTestResult.STATUS_FAILURE, 5));
+    other.index("BarTest").add(result(UnitTestResult.STATUS_SKIPPED, 0));
+    other
+        .index("BazTest")
+        .count(UnitTestResult.STATUS_ERROR, 7)
+        .count(UnitTestResult.STATUS_OK, -1);
+
+    assertThat(index.merge(other)).isSameAs(index);
+
+    assertThat(index.getClassnames()).containsOnly("FooTest", "BarTest", "BazTest");
+    UnitTestClassReport foo = index.get("FooTest");
+    assertThat(foo.getTests()).isEqualTo(2);
+    assertThat(foo.getFailures()).isEqualTo(1);
+    assertThat(foo.getDurationMilliseconds()).isEqualTo(15);
+    assertThat(foo.getResults()).hasSize(2);
+    assertThat(index.get("BarTest").getSkipped()).isEqualTo(1);
+    UnitTestClassReport baz = index.get("BazTest");
+    assertThat(baz.getTests()).isEqualTo(2);
+    assertThat(baz.getErrors()).isEqualTo(1);
+    assertThat(baz.getDurationMilliseconds()).isEqualTo(7);
+    assertThat(baz.getNegativeTimeTestNumber()).isEqualTo(1);
+    assertThat(baz.getResults()).isEmpty();
+  }
+
+  private static UnitTestResult result(String status, long durationMilliseconds) {
+    return new UnitTestResult().setStatus(status).setDurationMilliseconds(durationMilliseconds);
+  }
+}
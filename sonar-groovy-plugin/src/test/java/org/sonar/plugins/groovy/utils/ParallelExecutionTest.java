@@ -0,0 +1,81 @@
+/*
+ * Sonar Groovy Plugin
+ * Copyright (C) 2010-2021 SonarQube Community
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.groovy.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class ParallelExecutionTest {
+
+  private final List<Integer> items = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+
+  @Test
+  public void should_keep_input_order() {
+    List<Integer> results = new ArrayList<>();
+    ParallelExecution.forEachOrdered(items, 4, i -> i * 2, results::add);
+
+    assertThat(results)
+        .containsExactlyElementsOf(items.stream().map(i -> i * 2).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void should_run_on_calling_thread_with_one_thread() {
+    Thread caller = Thread.currentThread();
+    List<Thread> threads = new ArrayList<>();
+    ParallelExecution.forEachOrdered(items, 1, i -> Thread.currentThread(), threads::add);
+
+    assertThat(threads).hasSize(100).containsOnly(caller);
+  }
+
+  @Test
+  public void should_propagate_worker_exceptions() {
+    assertThatThrownBy(
+            () ->
+                ParallelExecution.forEachOrdered(
+                    items,
+                    4,
+                    i -> {
+                      if (i == 42) {
+                        throw new IllegalArgumentException("boom");
+                      }
+                      return i;
+                    },
+                    i -> {}))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("boom");
+  }
+
+  @Test
+  public void should_partition_in_consecutive_batches() {
+    List<List<Integer>> batches = ParallelExecution.partition(items, 3, 4);
+
+    assertThat(batches).hasSize(12);
+    assertThat(batches.get(0)).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8);
+    assertThat(batches.stream().flatMap(List::stream).collect(Collectors.toList()))
+        .containsExactlyElementsOf(items);
+    assertThat(ParallelExecution.partition(items.subList(0, 2), 4, 4)).hasSize(2);
+    assertThat(ParallelExecution.partition(new ArrayList<Integer>(), 4, 4)).isEmpty();
+  }
+}
@@ -0,0 +1,3 @@
+package org.example.scripts
+
+println 'deploying'
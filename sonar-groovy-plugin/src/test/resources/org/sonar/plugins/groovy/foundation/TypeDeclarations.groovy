@@ -0,0 +1,29 @@
+/* class NotAType */
+package org.example.specs
+
+import spock.lang.Specification
+
+class FirstSpec extends Specification {
+  def types = [class: String, other: Integer.class]
+
+  def "lists ${'braces'} in a GString"() {
+    expect:
+    [1, 2].every { it > 0 }
+  }
+
+  static class Inner {
+    enum Mode { ON, OFF }
+  }
+
+  def method() {
+    def anonymous = new Runnable() {
+      void run() {}
+    }
+  }
+}
+
+interface Service<T> {}
+
+trait Greeter {}
+
+@interface Marker {}